@@ -12,6 +12,7 @@ import play.mvc.results.NotFound;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.StringUtils;
@@ -25,14 +26,31 @@ import org.elasticsearch.node.Node;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 
+import models.elasticsearch.AdmissionControl;
 import models.elasticsearch.ElasticSearch;
+import models.elasticsearch.Metrics;
 import models.elasticsearch.PlayRestChannel;
 import models.elasticsearch.PlayRestRequest;
+import models.elasticsearch.QueryLog;
+import models.elasticsearch.Readiness;
+import models.elasticsearch.RestTimings;
 
 public class RestAPI extends Controller {
 
-	private static int counter = 0;
-	private static int running = 0;
+	private static final AtomicInteger counter = new AtomicInteger();
+	private static final AtomicInteger running = new AtomicInteger();
+
+	/**
+	 * endpoints that get their own operation tag, any other "_" segment is
+	 * counted as "rest other"
+	 */
+	private static final Set<String> ENDPOINTS = new HashSet<String>(
+			Arrays.asList("_search", "_msearch", "_count", "_mget", "_bulk",
+					"_validate", "_explain", "_query", "_update", "_source",
+					"_percolate", "_mlt", "_analyze", "_refresh", "_flush",
+					"_optimize", "_mapping", "_settings", "_aliases",
+					"_status", "_stats", "_segments", "_cache", "_open",
+					"_close", "_gateway", "_cluster", "_nodes", "_river"));
 
 	/**
 	 * Method allowing to communicate directly with an ES instance. This
@@ -53,67 +71,173 @@ public class RestAPI extends Controller {
 		 * your elastic search instance. adding some kind of security before
 		 * doing so would be a good idea.
 		 */
-
-		boolean allowed = false;
-
-		if (StringUtils.isNotBlank(token))
-			// try token
-			allowed = ElasticSearch.getRestApiAccess(token);
-		else
-			// try session cookie
-			allowed = ElasticSearch.getRestApiAccess();
-
-		if (!allowed) {
-			/**
-			 * simple method to add tokens
-			 */
-			throw new Forbidden("You need to be authorized to use this API.");
+		RestTimings timings = new RestTimings();
+		checkAccess(token);
+		timings.authorized();
+
+		Throwable startupFailure = Readiness.getFailure();
+		if (startupFailure != null)
+			// not retried, the node will not start without a restart
+			error(500, "Elastic search failed to start : "
+					+ startupFailure.getMessage());
+		if (!Readiness.isReady()) {
+			// the node is still starting in the background
+			response.setHeader("Retry-After", "5");
+			error(503, "Elastic search is starting");
 		}
+		Readiness.requested();
 
-		int requestId = counter++;
+		int requestId = counter.incrementAndGet();
 
 		if (Logger.isDebugEnabled())
-			Logger.debug("There are " + running + " requests already running");
-		running++;
+			Logger.debug("There are " + running.get()
+					+ " requests already running");
 
 		long startTime = System.currentTimeMillis();
 		if (StringUtils.isEmpty(path))
 			path = "/";
 
-		PlayRestRequest restRequest = new PlayRestRequest(request, path, body);
-		PlayRestChannel restChannel = new PlayRestChannel(restRequest, response);
-
+		// built before a slot is taken, so a request that cannot be built
+		// holds nothing
+		PlayRestRequest restRequest;
 		try {
-			ElasticSearch.restController.dispatchRequest(restRequest,
-					restChannel);
+			restRequest = new PlayRestRequest(request, path, body);
+		} catch (IllegalArgumentException e) {
+			// elastic search has no such method, such as PATCH or TRACE
+			error(405, "Method not supported : " + request.method);
+			return;
+		}
+		timings.built();
+
+		// bounded concurrency, see AdmissionControl. a call over the limit
+		// holds this worker thread for up to elasticsearch.rest.queue.timeout
+		AdmissionControl.Pool pool = AdmissionControl.pool(request.method,
+				path);
+		int admission = pool.acquire();
+		if (admission != AdmissionControl.ADMITTED) {
+			response.setHeader("Retry-After", "1");
+			error(admission,
+					admission == AdmissionControl.QUEUE_FULL ? "Too many elastic search requests"
+							: "Timed out waiting for elastic search");
+		}
+		timings.admitted();
+
+		// from here every exit releases the slot. await() cannot be inside a
+		// try/finally, the continuation would run the finally when suspended
+		Metrics.Timer timer = Metrics.start(operation(request.method, path),
+				index(path));
+		running.incrementAndGet();
+		PlayRestChannel restChannel;
+		try {
+			restChannel = new PlayRestChannel(restRequest, response);
 
-			if (Logger.isDebugEnabled())
-				Logger.debug("Wating on request : " + requestId);
+			if (QueryLog.isEnabled() && isSearch(path)
+					&& restRequest.hasContent())
+				QueryLog.sample(path, restRequest.content().toUtf8());
 
-			// block until request complete
-			restChannel.latch.await();
+			ElasticSearch.restController.dispatchRequest(restRequest,
+					restChannel);
+			timings.dispatched();
 		} catch (Exception e) {
+			running.decrementAndGet();
+			pool.release();
+			timer.stop();
 			Logger.error("Exception during request : " + requestId);
 			throw new IOException("failed to dispatch request", e);
 		}
 
+		if (Logger.isDebugEnabled())
+			Logger.debug("Wating on request : " + requestId);
+
+		// suspend the request until the response is written, this does not
+		// hold a worker thread while elastic search is busy
+		await(restChannel.completed);
+		running.decrementAndGet();
+		pool.release();
+		// a streamed response is timed once play has written it
+		restChannel.time(timings);
+
 		if (Logger.isDebugEnabled())
 			Logger.debug("Finishing request : " + requestId);
 
 		if (restChannel.sendFailure != null) {
+			timer.stop();
 			Logger.error("Failure request : " + requestId);
 			throw restChannel.sendFailure;
 		}
+		timer.success();
+		timer.stop();
 
 		if (Logger.isDebugEnabled()) {
 			Logger.debug("Finished request : " + requestId);
 			Logger.debug("Request took : "
 					+ (System.currentTimeMillis() - startTime) + "ms");
+			Logger.debug("There are now " + running.get() + " still running");
 		}
-		running--;
 
-		if (Logger.isDebugEnabled())
-			Logger.debug("There are now " + running + " still running");
+	}
 
+	/**
+	 * the counts, errors, calls in flight and latencies of the facade
+	 * operations and proxied calls as json, see {@link Metrics}. requires
+	 * the same access as the REST API.
+	 */
+	public static void metrics(String token) {
+		checkAccess(token);
+		renderJSON(Metrics.snapshot());
+	}
+
+	private static void checkAccess(String token) {
+		boolean allowed = false;
+
+		if (StringUtils.isNotBlank(token))
+			// try token
+			allowed = ElasticSearch.getRestApiAccess(token);
+		else
+			// try session cookie
+			allowed = ElasticSearch.getRestApiAccess();
+
+		if (!allowed) {
+			/**
+			 * simple method to add tokens
+			 */
+			throw new Forbidden("You need to be authorized to use this API.");
+		}
+	}
+
+	/**
+	 * @return the endpoint of a proxied call as the operation tag of
+	 *         {@link Metrics}, such as "rest _search", or the method for
+	 *         document calls such as "rest get"
+	 */
+	static String operation(String method, String path) {
+		for (String segment : StringUtils.split(path, '/'))
+			if (segment.startsWith("_"))
+				return ENDPOINTS.contains(segment) ? "rest " + segment
+						: "rest other";
+		return "rest " + method.toLowerCase();
+	}
+
+	/**
+	 * @return whether the call is a plain search, which the query log can
+	 *         replay. _msearch and scroll calls are not.
+	 */
+	static boolean isSearch(String path) {
+		String[] segments = StringUtils.split(path, '/');
+		return segments.length > 0
+				&& "_search".equals(segments[segments.length - 1]);
+	}
+
+	/**
+	 * @return the index a proxied call addresses, "_multiple" for lists and
+	 *         wildcards, or null
+	 */
+	static String index(String path) {
+		String[] segments = StringUtils.split(path, '/');
+		if (segments.length == 0 || segments[0].startsWith("_"))
+			return null;
+		if (StringUtils.containsAny(segments[0], ",*"))
+			return "_multiple";
+		return segments[0];
 	}
 }
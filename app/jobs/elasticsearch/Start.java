@@ -6,7 +6,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.ExecutionException;
 
+import models.elasticsearch.Config;
 import models.elasticsearch.ElasticSearch;
+import models.elasticsearch.QueryLog;
+import models.elasticsearch.Readiness;
 
 import org.elasticsearch.action.admin.cluster.state.ClusterStateResponse;
 import org.elasticsearch.common.settings.ImmutableSettings;
@@ -19,66 +22,54 @@ import play.Play;
 import play.jobs.Job;
 import play.jobs.OnApplicationStart;
 
+/**
+ * starts the embedded node. with elasticsearch.startup.async=true the
+ * application starts without waiting for the node and its shards, requests
+ * wait for it through {@link Readiness}.
+ */
 @OnApplicationStart
 public class Start extends Job {
 
+	/**
+	 * starts the node once, applications can call this from their own start
+	 * job to use the node before this job has run
+	 */
 	@Override
 	public void doJob() {
 
-		if (ElasticSearch.node == null) {
-			Logger.info("Initializing elasticsearch Node");
-			ImmutableSettings.Builder settings = ImmutableSettings
-					.settingsBuilder();
-
-			try {
-				// ability to switch to local instance in dev mode
-
-				String applicationConf = null;
-
-				if (Play.mode.isDev()) {
-					applicationConf = "conf/elasticsearch.dev.json";
-					Logger.info("DEV MODE : using local instance configuration for elastic search : "
-							+ applicationConf);
-				}
-
-				if (applicationConf != null
-						&& !new File(applicationConf).exists()) {
-					Logger.warn("Dev Mode configuration does not exist.  Trying to use production index instead");
-				}
-
-				if (applicationConf == null)
-					applicationConf = "conf/elasticsearch.prod.json";
-
-				InputStream resourceAsStream = new FileInputStream(
-						applicationConf);
-				if (resourceAsStream != null) {
-					settings.loadFromStream("/WEB-INF/elasticsearch.json",
-							resourceAsStream);
-					try {
-						resourceAsStream.close();
-					} catch (IOException e) {
-						System.err.println("Could not load settings");
-					}
+		synchronized (Start.class) {
+			if (ElasticSearch.node != null || Readiness.isStarting())
+				return;
+			Readiness.starting();
+		}
+		if (Config.getBoolean("elasticsearch.startup.async", false)) {
+			Logger.info("Starting elasticsearch Node in the background");
+			new Job() {
+				@Override
+				public void doJob() {
+					startNode();
 				}
-			} catch (Exception e) {
-				System.err.println("Could not load settings");
-			}
+			}.now();
+		} else
+			startNode();
 
-			if (settings.get("http.enabled") == null) {
-				settings.put("http.enabled", false);
-			}
+	}
 
-			if (settings.get("node.local") == null) {
-				settings.put("node.local", true);
-			}
+	private static void startNode() {
+		try {
+			long startTime = System.currentTimeMillis();
+			Logger.info("Initializing elasticsearch Node");
+			ImmutableSettings.Builder settings = loadSettings();
+			long settingsTime = System.currentTimeMillis();
 
 			ElasticSearch.node = NodeBuilder.nodeBuilder().settings(settings)
 					.node();
-			
+
 			ElasticSearch.restController = ((InternalNode) ElasticSearch.node)
 					.injector().getInstance(RestController.class);
 
 			ElasticSearch.client = ElasticSearch.node.client();
+			long nodeTime = System.currentTimeMillis();
 
 			try {
 				Logger.info("Waiting for elastic search cluster to start");
@@ -91,11 +82,73 @@ public class Start extends Job {
 			} catch (ExecutionException e) {
 				e.printStackTrace();
 			}
+			long recoveryTime = System.currentTimeMillis();
+
+			// warm caches with the logged queries before serving requests
+			int warmed = QueryLog.replay(ElasticSearch.client);
+			long warmupTime = System.currentTimeMillis();
 
 			Logger.info("bound_address : "
 					+ ElasticSearch.node.settings().get("bound_address"));
+			Logger.info("Elastic search started in "
+					+ (warmupTime - startTime) + "ms : settings "
+					+ (settingsTime - startTime) + "ms, node build "
+					+ (nodeTime - settingsTime) + "ms, shard recovery "
+					+ (recoveryTime - nodeTime) + "ms, warm up of " + warmed
+					+ " queries " + (warmupTime - recoveryTime) + "ms");
+			Readiness.ready();
+		} catch (RuntimeException e) {
+			Logger.error(e, "Elastic search failed to start");
+			Readiness.failed(e);
+			throw e;
+		}
+	}
+
+	private static ImmutableSettings.Builder loadSettings() {
+		ImmutableSettings.Builder settings = ImmutableSettings
+				.settingsBuilder();
+
+		try {
+			// ability to switch to local instance in dev mode
+
+			String applicationConf = null;
+
+			if (Play.mode.isDev()) {
+				applicationConf = "conf/elasticsearch.dev.json";
+				Logger.info("DEV MODE : using local instance configuration for elastic search : "
+						+ applicationConf);
+			}
 
+			if (applicationConf != null
+					&& !new File(applicationConf).exists()) {
+				Logger.warn("Dev Mode configuration does not exist.  Trying to use production index instead");
+			}
+
+			if (applicationConf == null)
+				applicationConf = "conf/elasticsearch.prod.json";
+
+			InputStream resourceAsStream = new FileInputStream(
+					applicationConf);
+			if (resourceAsStream != null) {
+				settings.loadFromStream("/WEB-INF/elasticsearch.json",
+						resourceAsStream);
+				try {
+					resourceAsStream.close();
+				} catch (IOException e) {
+					System.err.println("Could not load settings");
+				}
+			}
+		} catch (Exception e) {
+			System.err.println("Could not load settings");
 		}
 
+		if (settings.get("http.enabled") == null) {
+			settings.put("http.enabled", false);
+		}
+
+		if (settings.get("node.local") == null) {
+			settings.put("node.local", true);
+		}
+		return settings;
 	}
 }
@@ -2,7 +2,12 @@ package jobs.elasticsearch;
 
 import static org.elasticsearch.node.NodeBuilder.*;
 
+import java.util.concurrent.TimeUnit;
+
+import models.elasticsearch.Config;
 import models.elasticsearch.ElasticSearch;
+import models.elasticsearch.QueryLog;
+import models.elasticsearch.WriteBehind;
 
 import org.elasticsearch.client.Client;
 import org.elasticsearch.node.Node;
@@ -19,6 +24,18 @@ public class Stop extends Job {
 	@Override
 	public void doJob() {
 		try {
+			if (WriteBehind.pending() > 0) {
+				Logger.info("Writing " + WriteBehind.pending()
+						+ " queued documents");
+				if (!WriteBehind.drain(Config.getMillis(
+						"elasticsearch.writebehind.drain", "30s"),
+						TimeUnit.MILLISECONDS))
+					Logger.error(WriteBehind.pending()
+							+ " queued documents were not written");
+			}
+			QueryLog.close();
+			if (ElasticSearch.node == null)
+				return;
 			Logger.info("Stopping ElasticSearch node");
 			ElasticSearch.node.close();
 			Logger.info("Stopped ElasticSearch node");
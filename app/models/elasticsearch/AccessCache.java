@@ -0,0 +1,103 @@
+package models.elasticsearch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.BooleanUtils;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+
+/**
+ * keeps the answers of the REST API access check in the JVM, so a proxied
+ * call does not cost a lookup in play's cache, which can be a network hop
+ * to memcached.
+ *
+ * allowed keys are kept for elasticsearch.access.ttl (default 1m), denied
+ * keys for elasticsearch.access.deniedttl (default 10s).
+ * {@link ElasticSearch#setRestApiAccess} updates this JVM immediately, other
+ * application servers see the change once their entry expires.
+ *
+ * <pre>
+ * elasticsearch.access.size=10000
+ * elasticsearch.access.ttl=1m
+ * elasticsearch.access.deniedttl=10s
+ * </pre>
+ */
+public class AccessCache {
+
+	private static final int size = Config.getInt(
+			"elasticsearch.access.size", 10000);
+
+	private static final Cache<String, Boolean> allowed = CacheBuilder
+			.newBuilder()
+			.maximumSize(size)
+			.expireAfterWrite(
+					Config.getMillis("elasticsearch.access.ttl", "1m"),
+					TimeUnit.MILLISECONDS).build();
+
+	private static final Cache<String, Boolean> denied = CacheBuilder
+			.newBuilder()
+			.maximumSize(size)
+			.expireAfterWrite(
+					Config.getMillis("elasticsearch.access.deniedttl", "10s"),
+					TimeUnit.MILLISECONDS).build();
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @return whether the key may use the REST API, asking play's cache only
+	 *         if the answer is not known here
+	 */
+	static boolean isAllowed(String cacheKey) {
+		if (allowed.getIfPresent(cacheKey) != null) {
+			hits.incrementAndGet();
+			return true;
+		}
+		if (denied.getIfPresent(cacheKey) != null) {
+			hits.incrementAndGet();
+			return false;
+		}
+		misses.incrementAndGet();
+
+		boolean allow = BooleanUtils.isTrue(play.cache.Cache.get(cacheKey,
+				Boolean.class));
+		put(cacheKey, allow);
+		return allow;
+	}
+
+	static void put(String cacheKey, boolean allow) {
+		if (allow) {
+			denied.invalidate(cacheKey);
+			allowed.put(cacheKey, Boolean.TRUE);
+		} else {
+			allowed.invalidate(cacheKey);
+			denied.put(cacheKey, Boolean.FALSE);
+		}
+	}
+
+	public static void clear() {
+		allowed.invalidateAll();
+		denied.invalidateAll();
+	}
+
+	/**
+	 * @return hits, misses, hit rate and number of cached keys
+	 */
+	public static Map<String, Object> stats() {
+		long hitCount = hits.get();
+		long missCount = misses.get();
+		long requests = hitCount + missCount;
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("hits", hitCount);
+		stats.put("misses", missCount);
+		stats.put("hitRate", requests == 0 ? 0d : (double) hitCount
+				/ requests);
+		stats.put("allowed", allowed.size());
+		stats.put("denied", denied.size());
+		return stats;
+	}
+
+}
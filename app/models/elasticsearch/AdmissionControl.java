@@ -0,0 +1,156 @@
+package models.elasticsearch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * limits the number of REST API calls that run at once, so a burst of admin
+ * calls cannot take every request thread of the application. reads and
+ * writes have their own limits. a call that finds its limit reached waits in
+ * a bounded queue, for at most elasticsearch.rest.queue.timeout. it is
+ * answered 429 when the queue is full and 503 when the wait times out.
+ *
+ * a queued call blocks its play worker thread while it waits, so keep the
+ * timeout short (default 100ms). with a long timeout and a long queue the
+ * waiting calls can take every worker thread, which is what the limits are
+ * meant to prevent.
+ *
+ * searches sent with POST count as reads, since play does not accept a body
+ * with GET. disabled by default, configure it in application.conf :
+ *
+ * <pre>
+ * elasticsearch.rest.read.concurrent=20
+ * elasticsearch.rest.read.queue=100
+ * elasticsearch.rest.write.concurrent=4
+ * elasticsearch.rest.write.queue=20
+ * elasticsearch.rest.queue.timeout=100ms
+ * </pre>
+ */
+public class AdmissionControl {
+
+	public static final int ADMITTED = 200;
+	public static final int QUEUE_FULL = 429;
+	public static final int TIMED_OUT = 503;
+
+	private static final String[] READ_ENDPOINTS = { "_search", "_msearch",
+			"_count", "_mget", "_validate", "_explain" };
+
+	private static final long timeoutMillis = Config.getMillis(
+			"elasticsearch.rest.queue.timeout", "100ms");
+
+	private static final Pool reads = new Pool("read");
+	private static final Pool writes = new Pool("write");
+
+	public static class Pool {
+
+		private final String name;
+		private final int concurrent;
+		private final int queue;
+		private final Semaphore permits;
+		private final AtomicInteger waiting = new AtomicInteger();
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final StripedCounter admitted = new StripedCounter();
+		private final StripedCounter queueFull = new StripedCounter();
+		private final StripedCounter timedOut = new StripedCounter();
+		private final LatencyHistogram queueWait = new LatencyHistogram();
+
+		Pool(String name) {
+			this.name = name;
+			this.concurrent = Config.getInt("elasticsearch.rest." + name
+					+ ".concurrent", 0);
+			this.queue = Config.getInt(
+					"elasticsearch.rest." + name + ".queue", 0);
+			this.permits = concurrent > 0 ? new Semaphore(concurrent, true)
+					: null;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * waits for a slot if all are taken and the queue is not full. an
+		 * admitted call must be followed by {@link #release()}.
+		 *
+		 * @return {@link AdmissionControl#ADMITTED},
+		 *         {@link AdmissionControl#QUEUE_FULL} or
+		 *         {@link AdmissionControl#TIMED_OUT}
+		 */
+		public int acquire() {
+			if (permits != null && !permits.tryAcquire()) {
+				if (waiting.incrementAndGet() > queue) {
+					waiting.decrementAndGet();
+					queueFull.increment();
+					return QUEUE_FULL;
+				}
+				long start = System.nanoTime();
+				boolean acquired;
+				try {
+					acquired = permits.tryAcquire(timeoutMillis,
+							TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					acquired = false;
+				} finally {
+					waiting.decrementAndGet();
+				}
+				queueWait.record(System.nanoTime() - start);
+				if (!acquired) {
+					timedOut.increment();
+					return TIMED_OUT;
+				}
+			}
+			inFlight.incrementAndGet();
+			admitted.increment();
+			return ADMITTED;
+		}
+
+		public void release() {
+			inFlight.decrementAndGet();
+			if (permits != null)
+				permits.release();
+		}
+
+		Map<String, Object> stats() {
+			Map<String, Object> stats = new LinkedHashMap<String, Object>();
+			stats.put("concurrent", concurrent);
+			stats.put("queue", queue);
+			stats.put("inFlight", inFlight.get());
+			stats.put("waiting", waiting.get());
+			stats.put("admitted", admitted.sum());
+			stats.put("rejectedQueueFull", queueFull.sum());
+			stats.put("rejectedTimeout", timedOut.sum());
+			stats.put("queueWait", queueWait.snapshot());
+			return stats;
+		}
+	}
+
+	/**
+	 * @return the pool of reads or of writes the call belongs to
+	 */
+	public static Pool pool(String method, String path) {
+		if ("GET".equals(method) || "HEAD".equals(method)
+				|| "OPTIONS".equals(method))
+			return reads;
+		if ("POST".equals(method) && path != null)
+			for (String endpoint : READ_ENDPOINTS)
+				if (path.contains(endpoint))
+					return reads;
+		return writes;
+	}
+
+	/**
+	 * @return calls in flight, waiting, admitted and rejected, and the
+	 *         queue wait times of reads and writes
+	 */
+	public static Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put(reads.getName(), reads.stats());
+		stats.put(writes.getName(), writes.stats());
+		return stats;
+	}
+
+}
@@ -0,0 +1,181 @@
+package models.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.TextQueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+
+import play.Logger;
+
+/**
+ * prefix search backed by an edge ngram sub field. every prefix of every word
+ * of the field is indexed, so type-ahead becomes a term lookup instead of a
+ * wildcard query that enumerates the terms of the index.
+ *
+ * call {@link #provision(String, String, String...)} before adding data, then
+ * use {@link #suggest(String, String, String, int)} or {@link #query(String,
+ * String)}. the longest indexed prefix is elasticsearch.autocomplete.maxgram
+ * (default 20) characters.
+ */
+public class Autocomplete {
+
+	public static final String SUBFIELD = "autocomplete";
+
+	static final String ANALYZER = "es_play_autocomplete";
+	static final String SEARCH_ANALYZER = "es_play_autocomplete_search";
+	static final String FILTER = "es_play_edge_ngram";
+
+	private static final int maxGram = Config.getInt(
+			"elasticsearch.autocomplete.maxgram", 20);
+
+	/**
+	 * adds the autocomplete analyzers to the index and maps the fields as
+	 * multi fields with an autocomplete sub field. the index is created if
+	 * it does not exist, otherwise it is briefly closed to add the analyzers,
+	 * so call this once at startup rather than from requests. documents
+	 * indexed before this call are only found once saved again.
+	 */
+	public static void provision(String index, String type, String... fields) {
+		IndicesAdminClient indices = ElasticSearch.getClient().admin()
+				.indices();
+
+		if (!indices.prepareExists(index).execute().actionGet().exists()) {
+			indices.prepareCreate(index).setSettings(analysisSettings())
+					.execute().actionGet();
+		} else if (!hasAnalyzer(index)) {
+			Logger.info("Adding autocomplete analyzers to " + index);
+			indices.prepareClose(index).execute().actionGet();
+			try {
+				indices.prepareUpdateSettings(index)
+						.setSettings(analysisSettings()).execute().actionGet();
+			} finally {
+				indices.prepareOpen(index).execute().actionGet();
+			}
+			ElasticSearch.getClient().admin().cluster().prepareHealth(index)
+					.setWaitForYellowStatus().execute().actionGet();
+		}
+
+		Map<String, Object> properties = new HashMap<String, Object>();
+		for (String field : fields)
+			properties.put(field, multiField(field));
+		Map<String, Object> mapping = new HashMap<String, Object>();
+		mapping.put("properties", properties);
+		Map<String, Object> mappingSource = new HashMap<String, Object>();
+		mappingSource.put(type, mapping);
+
+		indices.preparePutMapping(index).setType(type)
+				.setSource(mappingSource).execute().actionGet();
+	}
+
+	/**
+	 * @return a query matching documents where a word of the field starts
+	 *         with each word of the prefix, or no documents for a blank
+	 *         prefix. the prefix goes through the search analyzer, so it is
+	 *         split into words the way the field was.
+	 */
+	public static QueryBuilder query(String field, String prefix) {
+		if (StringUtils.isBlank(prefix))
+			return QueryBuilders.boolQuery().mustNot(
+					QueryBuilders.matchAllQuery());
+
+		StringBuilder words = new StringBuilder();
+		for (String word : StringUtils.split(prefix))
+			words.append(truncate(word)).append(' ');
+		return QueryBuilders.textQuery(field + "." + SUBFIELD, words.toString())
+				.analyzer(SEARCH_ANALYZER)
+				.operator(TextQueryBuilder.Operator.AND);
+	}
+
+	/**
+	 * @return up to n distinct values of the field that match the prefix
+	 */
+	public static List<String> suggest(String index, String field,
+			String prefix, int n) {
+		List<String> suggestions = new ArrayList<String>();
+		if (StringUtils.isBlank(prefix) || n < 1)
+			return suggestions;
+
+		SearchResponse response = SearchOptions
+				.defaults()
+				.apply(ElasticSearch.getClient().prepareSearch(index)
+						.setQuery(query(field, prefix)).addField(field)
+						.setSize(n * 2)).execute().actionGet();
+
+		Set<String> values = new LinkedHashSet<String>();
+		for (SearchHit hit : response.getHits()) {
+			SearchHitField value = hit.field(field);
+			if (value != null && value.value() != null)
+				values.add(String.valueOf(value.value()));
+			if (values.size() == n)
+				break;
+		}
+		suggestions.addAll(values);
+		return suggestions;
+	}
+
+	private static boolean hasAnalyzer(String index) {
+		Settings settings = ElasticSearch.getClient().admin().cluster()
+				.prepareState().setFilterIndices(index).execute().actionGet()
+				.state().metaData().index(index).settings();
+		return settings.get("index.analysis.analyzer." + ANALYZER + ".type") != null;
+	}
+
+	private static Settings analysisSettings() {
+		String prefix = "index.analysis.";
+		return ImmutableSettings
+				.settingsBuilder()
+				.put(prefix + "filter." + FILTER + ".type", "edgeNGram")
+				.put(prefix + "filter." + FILTER + ".min_gram", 1)
+				.put(prefix + "filter." + FILTER + ".max_gram", maxGram)
+				.put(prefix + "filter." + FILTER + ".side", "front")
+				.put(prefix + "analyzer." + ANALYZER + ".type", "custom")
+				.put(prefix + "analyzer." + ANALYZER + ".tokenizer",
+						"standard")
+				.putArray(prefix + "analyzer." + ANALYZER + ".filter",
+						"lowercase", FILTER)
+				.put(prefix + "analyzer." + SEARCH_ANALYZER + ".type",
+						"custom")
+				.put(prefix + "analyzer." + SEARCH_ANALYZER + ".tokenizer",
+						"standard")
+				.putArray(prefix + "analyzer." + SEARCH_ANALYZER + ".filter",
+						"lowercase").build();
+	}
+
+	private static Map<String, Object> multiField(String field) {
+		Map<String, Object> main = new HashMap<String, Object>();
+		main.put("type", "string");
+		Map<String, Object> autocomplete = new HashMap<String, Object>();
+		autocomplete.put("type", "string");
+		autocomplete.put("index_analyzer", ANALYZER);
+		autocomplete.put("search_analyzer", SEARCH_ANALYZER);
+		Map<String, Object> subFields = new HashMap<String, Object>();
+		subFields.put(field, main);
+		subFields.put(SUBFIELD, autocomplete);
+		Map<String, Object> multiField = new HashMap<String, Object>();
+		multiField.put("type", "multi_field");
+		multiField.put("fields", subFields);
+		return multiField;
+	}
+
+	/**
+	 * prefixes are only indexed up to max_gram characters. a cut word is
+	 * still a prefix of the words the tokenizer makes of it.
+	 */
+	private static String truncate(String word) {
+		return word.length() > maxGram ? word.substring(0, maxGram) : word;
+	}
+
+}
@@ -0,0 +1,170 @@
+package models.elasticsearch;
+
+import java.util.concurrent.Semaphore;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequestBuilder;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.client.Client;
+
+/**
+ * splits a large number of index or delete requests into bulk requests that
+ * are bounded by number of documents and by size in bytes. up to
+ * concurrentRequests bulk requests are executed at once, after that add()
+ * blocks until one of them completes. memory use is therefore bounded by the
+ * requests in flight rather than by the size of the import.
+ *
+ * defaults can be set in application.conf :
+ *
+ * <pre>
+ * elasticsearch.bulk.actions=1000
+ * elasticsearch.bulk.size=5mb
+ * elasticsearch.bulk.concurrent=2
+ * </pre>
+ */
+public class BulkIndexer {
+
+	/**
+	 * rough size of a delete action in the bulk request body
+	 */
+	private static final long DELETE_SIZE = 100;
+
+	private final Client client;
+	private final int maxActions;
+	private final long maxBytes;
+	private final int concurrentRequests;
+	private final Semaphore inFlight;
+	private final BulkResult result = new BulkResult();
+
+	private BulkRequestBuilder bulk;
+	private long bulkBytes;
+	private int chunkCount;
+	private boolean closed;
+
+	/**
+	 * @param client
+	 * @param maxActions
+	 *            - documents per bulk request
+	 * @param maxBytes
+	 *            - source bytes per bulk request
+	 * @param concurrentRequests
+	 *            - bulk requests executed at the same time
+	 */
+	public BulkIndexer(Client client, int maxActions, long maxBytes,
+			int concurrentRequests) {
+		if (maxActions < 1 || maxBytes < 1 || concurrentRequests < 1)
+			throw new IllegalArgumentException(
+					"bulk limits must be positive : actions=" + maxActions
+							+ " bytes=" + maxBytes + " concurrent="
+							+ concurrentRequests);
+		this.client = client;
+		this.maxActions = maxActions;
+		this.maxBytes = maxBytes;
+		this.concurrentRequests = concurrentRequests;
+		this.inFlight = new Semaphore(concurrentRequests);
+	}
+
+	/**
+	 * creates an indexer using the limits from application.conf
+	 */
+	public static BulkIndexer create(Client client) {
+		return new BulkIndexer(client, Config.getInt(
+				"elasticsearch.bulk.actions", 1000), Config.getBytes(
+				"elasticsearch.bulk.size", "5mb"), Config.getInt(
+				"elasticsearch.bulk.concurrent", 2));
+	}
+
+	/**
+	 * adds a request to the current bulk request, sending it once it is full.
+	 * blocks while the maximum number of bulk requests are in flight.
+	 *
+	 * @param request
+	 * @param sizeInBytes
+	 *            - size of the document source
+	 */
+	public synchronized void add(IndexRequestBuilder request, long sizeInBytes) {
+		prepare(sizeInBytes).add(request);
+		added(sizeInBytes);
+	}
+
+	/**
+	 * adds a delete to the current bulk request, see
+	 * {@link #add(IndexRequestBuilder, long)}
+	 */
+	public synchronized void add(DeleteRequestBuilder request) {
+		prepare(DELETE_SIZE).add(request);
+		added(DELETE_SIZE);
+	}
+
+	private BulkRequestBuilder prepare(long sizeInBytes) {
+		if (closed)
+			throw new IllegalStateException("bulk indexer is closed");
+		if (bulk != null && bulkBytes + sizeInBytes > maxBytes)
+			flush();
+		if (bulk == null)
+			bulk = client.prepareBulk();
+		return bulk;
+	}
+
+	private void added(long sizeInBytes) {
+		bulkBytes += sizeInBytes;
+		if (bulk.numberOfActions() >= maxActions)
+			flush();
+	}
+
+	/**
+	 * sends the pending requests and waits for every bulk request to complete
+	 *
+	 * @return timings and failures of all bulk requests
+	 */
+	public BulkResult close() {
+		synchronized (this) {
+			if (!closed) {
+				flush();
+				closed = true;
+			}
+		}
+		inFlight.acquireUninterruptibly(concurrentRequests);
+		inFlight.release(concurrentRequests);
+		result.finished();
+		return result;
+	}
+
+	private void flush() {
+		if (bulk == null)
+			return;
+
+		final BulkRequestBuilder request = bulk;
+		final BulkResult.Chunk chunk = new BulkResult.Chunk(chunkCount++,
+				request.numberOfActions(), bulkBytes);
+		bulk = null;
+		bulkBytes = 0;
+
+		// backpressure : wait for a slot before building up the next chunk
+		inFlight.acquireUninterruptibly();
+		final long start = System.currentTimeMillis();
+		try {
+			request.execute(new ActionListener<BulkResponse>() {
+
+				public void onResponse(BulkResponse response) {
+					chunk.tookInMillis = System.currentTimeMillis() - start;
+					result.completed(chunk, response);
+					inFlight.release();
+				}
+
+				public void onFailure(Throwable e) {
+					chunk.tookInMillis = System.currentTimeMillis() - start;
+					result.failed(chunk, e);
+					inFlight.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			chunk.tookInMillis = System.currentTimeMillis() - start;
+			result.failed(chunk, e);
+			inFlight.release();
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package models.elasticsearch;
+
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.ImmutableSettings;
+
+import play.Logger;
+
+/**
+ * suspends refreshes and replication of an index while it is loaded. lucene
+ * then writes fewer, larger segments and nothing is copied to replicas until
+ * the load is finished.
+ *
+ * <pre>
+ * BulkLoad load = BulkLoad.begin(&quot;comments&quot;);
+ * try {
+ * 	ElasticSearch.bulkImport(&quot;comments&quot;, &quot;comment&quot;, null, comments);
+ * } finally {
+ * 	load.end(true);
+ * }
+ * </pre>
+ *
+ * the index is not searchable in a consistent way while the load runs.
+ */
+public class BulkLoad {
+
+	private static final String REFRESH_INTERVAL = "index.refresh_interval";
+	private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+
+	private final String index;
+	private final String refreshInterval;
+	private final int replicas;
+	private final long startTime = System.currentTimeMillis();
+	private boolean ended;
+
+	private BulkLoad(String index, String refreshInterval, int replicas) {
+		this.index = index;
+		this.refreshInterval = refreshInterval;
+		this.replicas = replicas;
+	}
+
+	/**
+	 * remembers the refresh interval and replicas of the index, creating it
+	 * if needed, then disables both
+	 */
+	public static BulkLoad begin(String index) {
+		IndicesAdminClient indices = ElasticSearch.getClient().admin()
+				.indices();
+		if (!indices.prepareExists(index).execute().actionGet().exists())
+			indices.prepareCreate(index).execute().actionGet();
+
+		IndexMetaData metaData = ElasticSearch.getClient().admin().cluster()
+				.prepareState().setFilterIndices(index).execute().actionGet()
+				.state().metaData().index(index);
+		BulkLoad load = new BulkLoad(index, metaData.settings().get(
+				REFRESH_INTERVAL, DEFAULT_REFRESH_INTERVAL),
+				metaData.numberOfReplicas());
+
+		indices.prepareUpdateSettings(index)
+				.setSettings(
+						ImmutableSettings.settingsBuilder()
+								.put(REFRESH_INTERVAL, "-1")
+								.put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS,
+										0).build()).execute().actionGet();
+		Logger.info("Bulk load of " + index + " started, refresh interval "
+				+ load.refreshInterval + " and " + load.replicas
+				+ " replicas suspended");
+		return load;
+	}
+
+	/**
+	 * restores the refresh interval and replicas, then refreshes the index.
+	 * safe to call more than once.
+	 *
+	 * @param optimize
+	 *            - also merge the index down to a single segment, which is
+	 *            slow but makes searches on a read mostly index faster
+	 */
+	public synchronized void end(boolean optimize) {
+		if (ended)
+			return;
+		ended = true;
+
+		IndicesAdminClient indices = ElasticSearch.getClient().admin()
+				.indices();
+		indices.prepareUpdateSettings(index)
+				.setSettings(
+						ImmutableSettings
+								.settingsBuilder()
+								.put(REFRESH_INTERVAL, refreshInterval)
+								.put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS,
+										replicas).build()).execute()
+				.actionGet();
+		indices.prepareRefresh(index).execute().actionGet();
+		if (optimize)
+			indices.prepareOptimize(index).setMaxNumSegments(1).execute()
+					.actionGet();
+		ElasticSearch.written(index);
+		Logger.info("Bulk load of " + index + " ended after "
+				+ (System.currentTimeMillis() - startTime) + "ms");
+	}
+
+	/**
+	 * @return a summary such as "1000 docs in 250ms (4000 docs/s, 2.1 MB/s)"
+	 */
+	static String throughput(BulkResult result) {
+		long took = Math.max(1, result.getTookInMillis());
+		return result.getActions() + " docs in " + took + "ms ("
+				+ (result.getActions() * 1000L / took) + " docs/s, "
+				+ String.format("%.1f", result.getSizeInBytes() * 1000d / took
+						/ (1024 * 1024)) + " MB/s)";
+	}
+
+}
@@ -0,0 +1,150 @@
+package models.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+
+/**
+ * outcome of a bulk import. holds one {@link Chunk} per bulk request that was
+ * sent, with its timing and failure count, plus the totals.
+ */
+public class BulkResult {
+
+	/**
+	 * only this many failure messages are kept, a failing import could
+	 * otherwise hold one message per document
+	 */
+	private static final int MAX_FAILURE_MESSAGES = 20;
+
+	private final List<Chunk> chunks = new ArrayList<Chunk>();
+	private final List<String> failureMessages = new ArrayList<String>();
+	private final long startTime = System.currentTimeMillis();
+	private long tookInMillis;
+
+	public static class Chunk {
+
+		public final int number;
+		public final int actions;
+		public final long sizeInBytes;
+
+		/**
+		 * time from sending the bulk request until the response arrived
+		 */
+		public long tookInMillis;
+
+		/**
+		 * time elastic search reports it spent on the request
+		 */
+		public long serverTookInMillis;
+
+		public int failures;
+
+		Chunk(int number, int actions, long sizeInBytes) {
+			this.number = number;
+			this.actions = actions;
+			this.sizeInBytes = sizeInBytes;
+		}
+
+		@Override
+		public String toString() {
+			return "chunk " + number + " : " + actions + " actions, "
+					+ sizeInBytes + " bytes, " + tookInMillis + "ms, "
+					+ failures + " failures";
+		}
+	}
+
+	synchronized void completed(Chunk chunk, BulkResponse response) {
+		chunk.serverTookInMillis = response.tookInMillis();
+		if (response.hasFailures()) {
+			for (BulkItemResponse item : response.items()) {
+				if (item.failed()) {
+					chunk.failures++;
+					addFailureMessage("[" + item.id() + "] "
+							+ item.failureMessage());
+				}
+			}
+		}
+		chunks.add(chunk);
+	}
+
+	synchronized void failed(Chunk chunk, Throwable e) {
+		chunk.failures = chunk.actions;
+		addFailureMessage("chunk " + chunk.number + " failed : "
+				+ e.getMessage());
+		chunks.add(chunk);
+	}
+
+	synchronized void finished() {
+		tookInMillis = System.currentTimeMillis() - startTime;
+	}
+
+	private void addFailureMessage(String message) {
+		if (failureMessages.size() < MAX_FAILURE_MESSAGES)
+			failureMessages.add(message);
+	}
+
+	/**
+	 * @return the chunks in the order they were sent
+	 */
+	public synchronized List<Chunk> getChunks() {
+		List<Chunk> sorted = new ArrayList<Chunk>(chunks);
+		Collections.sort(sorted, new Comparator<Chunk>() {
+			public int compare(Chunk a, Chunk b) {
+				return a.number - b.number;
+			}
+		});
+		return sorted;
+	}
+
+	public synchronized int getActions() {
+		int actions = 0;
+		for (Chunk chunk : chunks)
+			actions += chunk.actions;
+		return actions;
+	}
+
+	public synchronized long getSizeInBytes() {
+		long size = 0;
+		for (Chunk chunk : chunks)
+			size += chunk.sizeInBytes;
+		return size;
+	}
+
+	public synchronized int getFailures() {
+		int failures = 0;
+		for (Chunk chunk : chunks)
+			failures += chunk.failures;
+		return failures;
+	}
+
+	public boolean hasFailures() {
+		return getFailures() > 0;
+	}
+
+	/**
+	 * @return wall clock time of the whole import
+	 */
+	public synchronized long getTookInMillis() {
+		return tookInMillis;
+	}
+
+	public synchronized String buildFailureMessage() {
+		StringBuilder message = new StringBuilder();
+		message.append(getFailures()).append(" failures");
+		for (String failure : failureMessages)
+			message.append("\n").append(failure);
+		return message.toString();
+	}
+
+	@Override
+	public String toString() {
+		return getActions() + " actions in " + getChunks().size()
+				+ " chunks, " + getFailures() + " failures, took "
+				+ getTookInMillis() + "ms";
+	}
+
+}
@@ -0,0 +1,87 @@
+package models.elasticsearch;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * outcome of a bulk update : how many records were new, changed or unchanged
+ * and the result of writing the new and changed ones.
+ */
+public class BulkUpdateResult {
+
+	final AtomicInteger newRecords = new AtomicInteger();
+	final AtomicInteger changedRecords = new AtomicInteger();
+	final AtomicInteger unchangedRecords = new AtomicInteger();
+	final AtomicInteger failedRecords = new AtomicInteger();
+
+	private Throwable failure;
+
+	private BulkResult bulkResult = new BulkResult();
+
+	public int getNewRecords() {
+		return newRecords.get();
+	}
+
+	public int getChangedRecords() {
+		return changedRecords.get();
+	}
+
+	public int getUnchangedRecords() {
+		return unchangedRecords.get();
+	}
+
+	/**
+	 * @return number of records that could not be compared or written. a
+	 *         batch that failed unexpectedly counts all of its records.
+	 */
+	public int getFailedRecords() {
+		return failedRecords.get();
+	}
+
+	/**
+	 * @return the first error that made records fail, or null
+	 */
+	public synchronized Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @return whether records failed before or while they were written
+	 */
+	public boolean hasFailures() {
+		return getFailedRecords() > 0 || bulkResult.hasFailures();
+	}
+
+	synchronized void failed(int records, Throwable e) {
+		failedRecords.addAndGet(records);
+		if (failure == null)
+			failure = e;
+	}
+
+	/**
+	 * @return number of records that were written, new plus changed
+	 */
+	public int getUpdatedRecords() {
+		return getNewRecords() + getChangedRecords();
+	}
+
+	public int getTotalRecords() {
+		return getUpdatedRecords() + getUnchangedRecords();
+	}
+
+	public BulkResult getBulkResult() {
+		return bulkResult;
+	}
+
+	void setBulkResult(BulkResult bulkResult) {
+		this.bulkResult = bulkResult;
+	}
+
+	@Override
+	public String toString() {
+		return getNewRecords() + " new, " + getChangedRecords() + " changed, "
+				+ getUnchangedRecords() + " unchanged out of "
+				+ getTotalRecords() + " records, " + getFailedRecords()
+				+ " failed";
+	}
+
+}
@@ -0,0 +1,237 @@
+package models.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.get.GetField;
+
+import play.Logger;
+
+/**
+ * change detection for {@link ElasticSearch#bulkUpdate}. records are collected
+ * into batches, the existing documents of each batch are loaded with one
+ * multi-get and the new or changed records are handed straight to a
+ * {@link BulkIndexer}. several batches are looked up at the same time; add()
+ * blocks once that many batches are pending.
+ *
+ * defaults can be set in application.conf :
+ *
+ * <pre>
+ * elasticsearch.bulk.update.batch=500
+ * elasticsearch.bulk.update.concurrent=2
+ * </pre>
+ */
+class BulkUpdater {
+
+	/**
+	 * shared by all bulk updates, the number of lookups of one update is
+	 * bounded by its own semaphore
+	 */
+	private static ExecutorService executor;
+
+	private final Client client;
+	private final String index;
+	private final String type;
+	private final String idField;
+	private final int batchSize;
+	private final int concurrentBatches;
+	private final boolean fingerprint;
+
+	private final BulkIndexer indexer;
+	private final Semaphore pending;
+	private final BulkUpdateResult result = new BulkUpdateResult();
+
+	private List<Record> batch;
+
+	/**
+	 * with fingerprints the record is kept as it was given and written
+	 * without converting it, otherwise the map is needed for the comparison
+	 */
+	static class Record {
+		final String id;
+		final Object record;
+		final String fingerprint;
+
+		Record(String id, Object record, String fingerprint) {
+			this.id = id;
+			this.record = record;
+			this.fingerprint = fingerprint;
+		}
+	}
+
+	BulkUpdater(Client client, String index, String type, String idField) {
+		this.client = client;
+		this.index = index;
+		this.type = type;
+		this.idField = idField;
+		this.batchSize = Config.getInt("elasticsearch.bulk.update.batch", 500);
+		this.concurrentBatches = Config.getInt(
+				"elasticsearch.bulk.update.concurrent", 2);
+		this.fingerprint = Fingerprint.isEnabled();
+		this.indexer = BulkIndexer.create(client);
+		this.pending = new Semaphore(concurrentBatches);
+	}
+
+	void add(Object object) {
+		Object record = fingerprint ? object : ElasticSearch
+				.convertToMap(object);
+		String id = SourceWriter.getId(idField, record);
+		String hash = fingerprint ? Fingerprint.of(record) : null;
+		if (id == null) {
+			// auto-generated ids are always new records
+			write(new Record(null, record, hash));
+			result.newRecords.incrementAndGet();
+			return;
+		}
+
+		if (batch == null)
+			batch = new ArrayList<Record>(batchSize);
+		batch.add(new Record(id, record, hash));
+		if (batch.size() >= batchSize)
+			submit();
+	}
+
+	/**
+	 * waits for all pending lookups and writes. batches that could not be
+	 * compared or written are counted in
+	 * {@link BulkUpdateResult#getFailedRecords()}.
+	 */
+	BulkUpdateResult close() {
+		try {
+			submit();
+		} finally {
+			pending.acquireUninterruptibly(concurrentBatches);
+			pending.release(concurrentBatches);
+			result.setBulkResult(indexer.close());
+		}
+		if (result.getFailure() != null)
+			Logger.error(result.getFailure(), "%s records of the bulk update "
+					+ "failed", result.getFailedRecords());
+		return result;
+	}
+
+	private void submit() {
+		if (batch == null)
+			return;
+
+		final List<Record> records = batch;
+		batch = null;
+
+		pending.acquireUninterruptibly();
+		try {
+			getExecutor().execute(new Runnable() {
+				public void run() {
+					try {
+						compare(records);
+					} catch (Throwable e) {
+						// records are handled one by one, so this is an
+						// error the batch cannot be trusted after
+						result.failed(records.size(), e);
+						if (e instanceof Error)
+							throw (Error) e;
+					} finally {
+						pending.release();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			pending.release();
+			throw e;
+		}
+	}
+
+	private void compare(List<Record> records) {
+		MultiGetResponse response;
+		try {
+			MultiGetRequestBuilder request = client.prepareMultiGet();
+			for (Record record : records) {
+				MultiGetRequest.Item item = new MultiGetRequest.Item(index,
+						type, record.id);
+				// only the stored hash is needed to detect changes
+				if (fingerprint)
+					item.fields(Fingerprint.FIELD);
+				request.add(item);
+			}
+			response = request.execute().actionGet();
+		} catch (Exception e) {
+			Logger.error(e, "Could not load existing records, "
+					+ "writing all %s records of the batch", records.size());
+			for (Record record : records) {
+				try {
+					write(record);
+					result.newRecords.incrementAndGet();
+				} catch (RuntimeException failure) {
+					result.failed(1, failure);
+				}
+			}
+			return;
+		}
+
+		MultiGetItemResponse[] items = response.responses();
+		for (int i = 0; i < records.size(); i++) {
+			Record record = records.get(i);
+			MultiGetItemResponse item = items[i];
+			GetResponse current = item.failed() ? null : item.response();
+			if (item.failed())
+				Logger.warn("Could not load record " + record.id + " : "
+						+ item.failure().message());
+
+			try {
+				if (current == null || !current.exists()) {
+					write(record);
+					result.newRecords.incrementAndGet();
+				} else if (changed(record, current)) {
+					write(record);
+					result.changedRecords.incrementAndGet();
+				} else
+					result.unchangedRecords.incrementAndGet();
+			} catch (RuntimeException e) {
+				result.failed(1, e);
+			}
+		}
+	}
+
+	private boolean changed(Record record, GetResponse current) {
+		if (fingerprint) {
+			GetField field = current.field(Fingerprint.FIELD);
+			return field == null
+					|| !record.fingerprint.equals(field.getValue());
+		}
+		return ElasticSearch.notEqual(
+				(Map<String, Object>) record.record, current.getSource());
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null)
+			executor = Executors.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable,
+							"elasticsearch-bulk-update");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		return executor;
+	}
+
+	private void write(Record record) {
+		byte[] source = SourceWriter.toSource(record.record,
+				record.fingerprint);
+		IndexRequestBuilder request = client.prepareIndex(index, type,
+				record.id).setSource(source);
+		indexer.add(request, source.length);
+	}
+
+}
@@ -0,0 +1,103 @@
+package models.elasticsearch;
+
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+
+import play.Logger;
+import play.Play;
+
+/**
+ * reads the module settings from application.conf. all keys are optional and
+ * fall back to the given default, which also makes it safe to use outside of
+ * a running Play application.
+ */
+public class Config {
+
+	public static String get(String key, String defaultValue) {
+		if (Play.configuration == null)
+			return defaultValue;
+		return Play.configuration.getProperty(key, defaultValue);
+	}
+
+	/**
+	 * a value that is not a number is logged and the default is used, so a
+	 * typo does not break the class reading it. the same goes for the other
+	 * numeric getters.
+	 */
+	public static int getInt(String key, int defaultValue) {
+		String value = get(key, null);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			Logger.warn("%s is not a number : %s, using %s", key, value,
+					defaultValue);
+			return defaultValue;
+		}
+	}
+
+	public static long getLong(String key, long defaultValue) {
+		String value = get(key, null);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			Logger.warn("%s is not a number : %s, using %s", key, value,
+					defaultValue);
+			return defaultValue;
+		}
+	}
+
+	public static double getDouble(String key, double defaultValue) {
+		String value = get(key, null);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			Logger.warn("%s is not a number : %s, using %s", key, value,
+					defaultValue);
+			return defaultValue;
+		}
+	}
+
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		String value = get(key, null);
+		if (value == null)
+			return defaultValue;
+		return Boolean.parseBoolean(value.trim());
+	}
+
+	/**
+	 * @param defaultValue
+	 *            - a size such as "5mb" or "512kb"
+	 */
+	public static long getBytes(String key, String defaultValue) {
+		String value = get(key, defaultValue);
+		try {
+			return ByteSizeValue.parseBytesSizeValue(value.trim()).bytes();
+		} catch (RuntimeException e) {
+			Logger.warn("%s is not a size : %s, using %s", key, value,
+					defaultValue);
+			return ByteSizeValue.parseBytesSizeValue(defaultValue).bytes();
+		}
+	}
+
+	/**
+	 * @param defaultValue
+	 *            - a duration such as "100ms", "5s" or "1m"
+	 */
+	public static long getMillis(String key, String defaultValue) {
+		String value = get(key, defaultValue);
+		try {
+			return TimeValue.parseTimeValue(value.trim(), null).millis();
+		} catch (RuntimeException e) {
+			Logger.warn("%s is not a duration : %s, using %s", key, value,
+					defaultValue);
+			return TimeValue.parseTimeValue(defaultValue, null).millis();
+		}
+	}
+
+}
@@ -0,0 +1,195 @@
+package models.elasticsearch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+
+/**
+ * read through cache for {@link ElasticSearch#getById} and
+ * {@link ElasticSearch#getObject}, keyed by index, type and id. writes and
+ * deletes through the facade remove the document from the cache, and a read
+ * is only cached if no write to the index completed while it was running.
+ *
+ * only the listed indices are cached, each with its own size and ttl :
+ *
+ * <pre>
+ * elasticsearch.doccache.indices=config,profiles
+ * elasticsearch.doccache.size=10000
+ * elasticsearch.doccache.ttl=10m
+ * elasticsearch.doccache.profiles.size=50000
+ * # also cache the objects built by getObject
+ * elasticsearch.doccache.profiles.typed=true
+ * </pre>
+ *
+ * typed objects are shared between callers, so they must be treated as read
+ * only. source maps are copied before they are returned.
+ */
+public class DocumentCache {
+
+	private static final Map<String, IndexCache> caches = createCaches();
+
+	static class IndexCache {
+		final Cache<String, Entry> cache;
+		final boolean typed;
+		final AtomicLong hits = new AtomicLong();
+		final AtomicLong misses = new AtomicLong();
+
+		IndexCache(String index) {
+			String prefix = "elasticsearch.doccache." + index + ".";
+			int size = Config.getInt(prefix + "size",
+					Config.getInt("elasticsearch.doccache.size", 10000));
+			long ttl = Config.getMillis(prefix + "ttl",
+					Config.get("elasticsearch.doccache.ttl", "10m"));
+			this.typed = Config.getBoolean(prefix + "typed",
+					Config.getBoolean("elasticsearch.doccache.typed", false));
+			this.cache = CacheBuilder.newBuilder().maximumSize(size)
+					.expireAfterWrite(ttl, TimeUnit.MILLISECONDS).build();
+		}
+
+		/**
+		 * caches the entry unless the index was written to since the
+		 * generation was taken. a write that lands between the check and the
+		 * put is caught by checking again afterwards.
+		 */
+		void put(String index, String key, Entry entry, String generation) {
+			if (!current(index, generation))
+				return;
+			cache.put(key, entry);
+			if (!current(index, generation))
+				cache.asMap().remove(key, entry);
+		}
+	}
+
+	static class Entry {
+		final Map<String, Object> source;
+		final ConcurrentMap<Class<?>, Object> objects = new ConcurrentHashMap<Class<?>, Object>();
+
+		Entry(Map<String, Object> source) {
+			this.source = source;
+		}
+	}
+
+	private static Map<String, IndexCache> createCaches() {
+		Map<String, IndexCache> caches = new HashMap<String, IndexCache>();
+		for (String index : StringUtils.split(
+				Config.get("elasticsearch.doccache.indices", ""), ", "))
+			caches.put(index, new IndexCache(index));
+		return caches;
+	}
+
+	public static boolean isEnabled(String index) {
+		return caches.containsKey(index);
+	}
+
+	/**
+	 * counts one hit or miss, {@link #getObject} only counts its hits so a
+	 * lookup that falls back to the source is counted once
+	 *
+	 * @return a copy of the cached source or null
+	 */
+	static Map<String, Object> getSource(String index, String type, String id) {
+		IndexCache indexCache = caches.get(index);
+		if (indexCache == null)
+			return null;
+		Entry entry = indexCache.cache.getIfPresent(key(type, id));
+		if (entry == null || entry.source == null) {
+			indexCache.misses.incrementAndGet();
+			return null;
+		}
+		indexCache.hits.incrementAndGet();
+		return QueryCache.copy(entry.source);
+	}
+
+	/**
+	 * @param generation
+	 *            - the index generation before the document was read
+	 */
+	static void putSource(String index, String type, String id,
+			Map<String, Object> source, String generation) {
+		IndexCache indexCache = caches.get(index);
+		if (indexCache != null)
+			indexCache.put(index, key(type, id),
+					new Entry(QueryCache.copy(source)), generation);
+	}
+
+	/**
+	 * @return the cached object or null, in which case the caller looks up
+	 *         the source with {@link #getSource}
+	 */
+	static <T> T getObject(String index, String type, String id, Class<T> clazz) {
+		IndexCache indexCache = caches.get(index);
+		if (indexCache == null || !indexCache.typed)
+			return null;
+		Entry entry = indexCache.cache.getIfPresent(key(type, id));
+		Object object = entry == null ? null : entry.objects.get(clazz);
+		if (object == null)
+			return null;
+		indexCache.hits.incrementAndGet();
+		return clazz.cast(object);
+	}
+
+	static void putObject(String index, String type, String id,
+			Object object, String generation) {
+		IndexCache indexCache = caches.get(index);
+		if (indexCache == null || !indexCache.typed
+				|| !current(index, generation))
+			return;
+		String key = key(type, id);
+		Entry entry = indexCache.cache.getIfPresent(key);
+		if (entry == null) {
+			Entry created = new Entry(null);
+			created.objects.put(object.getClass(), object);
+			indexCache.put(index, key, created, generation);
+			return;
+		}
+		entry.objects.put(object.getClass(), object);
+		if (!current(index, generation))
+			indexCache.cache.asMap().remove(key, entry);
+	}
+
+	public static void invalidate(String index, String type, String id) {
+		IndexCache indexCache = caches.get(index);
+		if (indexCache != null)
+			indexCache.cache.invalidate(key(type, id));
+	}
+
+	public static void invalidate(String index) {
+		IndexCache indexCache = caches.get(index);
+		if (indexCache != null)
+			indexCache.cache.invalidateAll();
+	}
+
+	/**
+	 * @return hits, misses and size of each cached index
+	 */
+	public static Map<String, Object> stats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		for (Map.Entry<String, IndexCache> index : caches.entrySet()) {
+			IndexCache indexCache = index.getValue();
+			Map<String, Object> indexStats = new HashMap<String, Object>();
+			indexStats.put("hits", indexCache.hits.get());
+			indexStats.put("misses", indexCache.misses.get());
+			indexStats.put("size", indexCache.cache.size());
+			indexStats.put("typed", indexCache.typed);
+			stats.put(index.getKey(), indexStats);
+		}
+		return stats;
+	}
+
+	private static boolean current(String index, String generation) {
+		return generation != null
+				&& generation.equals(IndexGenerations.of(index));
+	}
+
+	private static String key(String type, String id) {
+		return type + "/" + id;
+	}
+
+}
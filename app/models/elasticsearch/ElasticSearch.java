@@ -1,14 +1,18 @@
 package models.elasticsearch;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 
 import org.apache.commons.beanutils.BeanUtils;
@@ -25,7 +29,9 @@ import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.map.DeserializationConfig.Feature;
 import org.codehaus.jackson.map.JsonMappingException;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectReader;
 import org.codehaus.jackson.map.util.BeanUtil;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.ActionRequestBuilder;
 import org.elasticsearch.action.ActionResponse;
@@ -34,7 +40,9 @@ import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequest;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequestBuilder;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequestBuilder;
 import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.deletebyquery.DeleteByQueryResponse;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexRequestBuilder;
@@ -46,6 +54,8 @@ import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.action.support.BaseRequestBuilder;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.base.Charsets;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Lists;
 import org.elasticsearch.index.query.IdsQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
@@ -59,6 +69,8 @@ import org.elasticsearch.search.SearchHits;
 
 import play.Logger;
 import play.cache.Cache;
+import play.libs.F.Action;
+import play.libs.F.Promise;
 import play.mvc.Http.Header;
 import play.mvc.Http.Request;
 import play.mvc.Scope.Session;
@@ -74,20 +86,34 @@ public class ElasticSearch {
 	public static Node node;
 	public static RestController restController;
 	public static Client client;
-	public static ObjectMapper mapper;
+	public static volatile ObjectMapper mapper;
+
+	/**
+	 * readers are immutable and resolve the deserializers of a class once
+	 */
+	private static final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
 
 	public static final String ES_REST_API_KEY = "es_rest_api_key";
 
 	/**
-	 * no threads is used since request is presumed to be run on same instance.
-	 * more testing and tuning of these parameters is needed
+	 * executeQuery options that are not set in application.conf or per call.
+	 * no threads is used since request is presumed to be run on same
+	 * instance. see {@link SearchOptions} to tune them.
 	 */
-	private static SearchOperationThreading threadingModel = SearchOperationThreading.NO_THREADS;
-	private static SearchType searchType = SearchType.DFS_QUERY_AND_FETCH;
+	private static final SearchOptions queryDefaults = SearchOptions
+			.defaults().withDefaults(
+					new SearchOptions().searchType(
+							SearchType.DFS_QUERY_AND_FETCH).operationThreading(
+							SearchOperationThreading.NO_THREADS));
 	private static WriteConsistencyLevel writeConsistency = WriteConsistencyLevel.ONE;
 	private static boolean refreshOnDelete = true;
 
+	/**
+	 * waits for the node while it is starting in the background, see
+	 * {@link Readiness}
+	 */
 	public static Client getClient() {
+		Readiness.await();
 		return client;
 	}
 
@@ -97,16 +123,22 @@ public class ElasticSearch {
 
 	public static ObjectMapper getMapper() {
 		if (mapper == null) {
-			synchronized (client) {
-				mapper = new ObjectMapper();
-				mapper.configure(Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+			synchronized (ElasticSearch.class) {
+				if (mapper == null) {
+					ObjectMapper objectMapper = new ObjectMapper();
+					objectMapper.configure(
+							Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+					mapper = objectMapper;
+				}
 			}
 		}
 		return mapper;
 	}
 
 	/**
-	 * efficient import of many objects
+	 * efficient import of many objects. the objects are sent as several bulk
+	 * requests, split by number and size of documents, with a few requests
+	 * running at the same time. see {@link BulkIndexer} for the limits.
 	 * 
 	 * @param index
 	 * @param type
@@ -114,37 +146,111 @@ public class ElasticSearch {
 	 *            - optional. if you don't specify this, id values will be
 	 *            auto-generated
 	 * @param objects
+	 * @return timings and failures of each bulk request
 	 */
-	public static void bulkImport(String index, String type, String idField,
-			List<?> objects) {
+	public static BulkResult bulkImport(String index, String type,
+			String idField, List<?> objects) {
 
 		if (objects == null || objects.size() == 0) {
 			Logger.warn("Nothing to save");
-			return;
+			return new BulkResult();
 		}
 
-		BulkRequestBuilder bulk = getClient().prepareBulk();
-		for (int i = 0; i < objects.size(); i++) {
-			Object record = objects.get(i);
+		return bulkImport(index, type, idField, objects.iterator());
+	}
 
-			Map<String, Object> recordMap = convertToMap(record);
-			String id = getId(idField, recordMap);
+	/**
+	 * imports objects as they are read from the iterator. only the bulk
+	 * requests in flight are held in memory, so the iterator can stream a
+	 * data set larger than the heap.
+	 * 
+	 * @param index
+	 * @param type
+	 * @param idField
+	 *            - optional. if you don't specify this, id values will be
+	 *            auto-generated
+	 * @param objects
+	 * @return timings and failures of each bulk request
+	 */
+	public static BulkResult bulkImport(String index, String type,
+			String idField, Iterator<?> objects) {
 
-			IndexRequestBuilder request = getClient().prepareIndex(index, type,
-					id).setSource(recordMap);
-			bulk.add(request);
+		if (!objects.hasNext()) {
+			Logger.warn("Nothing to save");
+			return new BulkResult();
 		}
-		BulkResponse bulkResponse = bulk.execute().actionGet();
-		if (bulkResponse.hasFailures()) {
+
+		Metrics.Timer timer = Metrics.start("bulkImport", index);
+		BulkResult result;
+		BulkIndexer indexer = BulkIndexer.create(getClient());
+		try {
+			while (objects.hasNext()) {
+				Object record = objects.next();
+
+				String id = SourceWriter.getId(idField, record);
+				byte[] source = SourceWriter.toSource(record);
+
+				IndexRequestBuilder request = getClient().prepareIndex(index,
+						type, id).setSource(source);
+				indexer.add(request, source.length);
+			}
+			timer.success();
+		} finally {
+			// always wait for the requests already sent
+			result = indexer.close();
+			written(index);
+			if (result.hasFailures())
+				timer.failure();
+			timer.stop();
+		}
+
+		if (result.hasFailures()) {
 			Logger.error("Failed to add elements: "
-					+ bulkResponse.buildFailureMessage());
+					+ result.buildFailureMessage());
 		} else
-			Logger.info("Imported " + objects.size() + " objects");
+			Logger.info("Imported " + BulkLoad.throughput(result) + ", "
+					+ result);
+		return result;
+	}
+
+	/**
+	 * imports a file with one json object per line
+	 * 
+	 * @see #bulkImport(String, String, String, Iterator)
+	 */
+	public static BulkResult bulkImport(String index, String type,
+			String idField, File jsonLines) throws IOException {
+		JsonLinesIterator records = new JsonLinesIterator(jsonLines);
+		try {
+			return bulkImport(index, type, idField, records);
+		} finally {
+			records.close();
+		}
+	}
+
+	/**
+	 * imports objects with refreshes and replicas of the index suspended,
+	 * restoring them even if the import fails. use it for large initial
+	 * loads, see {@link BulkLoad}.
+	 * 
+	 * @param optimize
+	 *            - merge the index down to one segment after the import
+	 * @see #bulkImport(String, String, String, Iterator)
+	 */
+	public static BulkResult bulkLoad(String index, String type,
+			String idField, Iterator<?> objects, boolean optimize) {
+		BulkLoad load = BulkLoad.begin(index);
+		try {
+			return bulkImport(index, type, idField, objects);
+		} finally {
+			load.end(optimize);
+		}
 	}
 
 	/**
 	 * efficient update of many objects. adds new records and replaces changed
-	 * ones. does not remove records.
+	 * ones. does not remove records. existing records are loaded in batches
+	 * with multi-get and only new or changed records are written.
 	 * 
 	 * @param index
 	 * @param type
@@ -152,61 +258,114 @@ public class ElasticSearch {
 	 *            - optional. if you don't specify this, id values will be
 	 *            auto-generated
 	 * @param objects
-	 * @return
+	 * @return the number of records that were written, new plus changed
 	 */
 	public static int bulkUpdate(String index, String type, String idField,
 			List<?> objects) {
+		return bulkUpdateDetailed(index, type, idField, objects)
+				.getUpdatedRecords();
+	}
+
+	/**
+	 * updates objects as they are read from the iterator. only the pending
+	 * lookup batches and bulk requests are held in memory.
+	 * 
+	 * @see #bulkUpdate(String, String, String, List)
+	 */
+	public static int bulkUpdate(String index, String type, String idField,
+			Iterator<?> objects) {
+		return bulkUpdateDetailed(index, type, idField, objects)
+				.getUpdatedRecords();
+	}
+
+	/**
+	 * updates from a file with one json object per line
+	 * 
+	 * @see #bulkUpdate(String, String, String, Iterator)
+	 */
+	public static int bulkUpdate(String index, String type, String idField,
+			File jsonLines) throws IOException {
+		return bulkUpdateDetailed(index, type, idField, jsonLines)
+				.getUpdatedRecords();
+	}
+
+	/**
+	 * same as {@link #bulkUpdate(String, String, String, List)}, but returns
+	 * the number of new, changed, unchanged and failed records
+	 */
+	public static BulkUpdateResult bulkUpdateDetailed(String index,
+			String type, String idField, List<?> objects) {
 
 		if (objects == null || objects.size() == 0) {
 			Logger.warn("Nothing to update");
-			return 0;
-		}
-
-		int newRecords = 0;
-		int updatedRecords = 0;
-		List<Map<String, Object>> updates = Lists.newArrayList();
-		for (int i = 0; i < objects.size(); i++) {
-			Map<String, Object> recordMap = convertToMap(objects.get(i));
-			String id = getId(idField, recordMap);
-			Map<String, Object> current = getById(index, type, id);
-			if (current == null) {
-				updates.add(recordMap);
-				newRecords++;
-			} else if (notEqual(recordMap, current)) {
-				updates.add(recordMap);
-				updatedRecords++;
-			}
+			return new BulkUpdateResult();
 		}
 
-		Logger.info("There are " + newRecords + " new records");
-		Logger.info("There are " + updatedRecords + " changed records");
-		Logger.info("There are " + updates.size()
-				+ " total updated records out of " + objects.size()
-				+ " records");
+		return bulkUpdateDetailed(index, type, idField, objects.iterator());
+	}
 
-		if (updates.size() == 0) {
-			Logger.warn("Nothing changed, so no updates needed");
-			return 0;
+	/**
+	 * same as {@link #bulkUpdate(String, String, String, Iterator)}, but
+	 * returns the number of new, changed, unchanged and failed records
+	 */
+	public static BulkUpdateResult bulkUpdateDetailed(String index,
+			String type, String idField, Iterator<?> objects) {
+
+		if (!objects.hasNext()) {
+			Logger.warn("Nothing to update");
+			return new BulkUpdateResult();
 		}
 
-		BulkRequestBuilder bulk = getClient().prepareBulk();
-		for (Map<String, Object> recordMap : updates) {
-			String id = getId(idField, recordMap);
-			IndexRequestBuilder request = getClient().prepareIndex(index, type,
-					id).setSource(recordMap);
-			bulk.add(request);
+		Metrics.Timer timer = Metrics.start("bulkUpdate", index);
+		BulkUpdateResult result;
+		BulkUpdater updater = new BulkUpdater(getClient(), index, type,
+				idField);
+		try {
+			while (objects.hasNext())
+				updater.add(objects.next());
+			timer.success();
+		} finally {
+			result = updater.close();
+			written(index);
+			if (result.hasFailures())
+				timer.failure();
+			timer.stop();
 		}
-		BulkResponse bulkResponse = bulk.execute().actionGet();
-		if (bulkResponse.hasFailures()) {
+
+		Logger.info("There are " + result.getNewRecords() + " new records");
+		Logger.info("There are " + result.getChangedRecords()
+				+ " changed records");
+		Logger.info("There are " + result.getUpdatedRecords()
+				+ " total updated records out of " + result.getTotalRecords()
+				+ " records");
+
+		BulkResult bulkResult = result.getBulkResult();
+		if (result.getUpdatedRecords() == 0) {
+			Logger.warn("Nothing changed, so no updates needed");
+		} else if (bulkResult.hasFailures()) {
 			Logger.error("Failed to add elements: "
-					+ bulkResponse.buildFailureMessage());
+					+ bulkResult.buildFailureMessage());
 		} else
-			Logger.info("Updated " + updates.size() + " objects");
+			Logger.info("Updated " + result.getUpdatedRecords() + " objects");
 
-		return updates.size();
+		return result;
 	}
 
-	private static boolean notEqual(Map<String, Object> a, Map<String, Object> b) {
+	/**
+	 * same as {@link #bulkUpdate(String, String, String, File)}, but returns
+	 * the number of new, changed, unchanged and failed records
+	 */
+	public static BulkUpdateResult bulkUpdateDetailed(String index,
+			String type, String idField, File jsonLines) throws IOException {
+		JsonLinesIterator records = new JsonLinesIterator(jsonLines);
+		try {
+			return bulkUpdateDetailed(index, type, idField, records);
+		} finally {
+			records.close();
+		}
+	}
+
+	static boolean notEqual(Map<String, Object> a, Map<String, Object> b) {
 		Set<String> aKeySet = a.keySet();
 		Set<String> bKeySet = b.keySet();
 		Collection<String> keys = CollectionUtils
@@ -251,7 +410,7 @@ public class ElasticSearch {
 		return false;
 	}
 
-	private static String getId(String idField, Map<String, Object> recordMap) {
+	static String getId(String idField, Map<String, Object> recordMap) {
 		String id = null;
 		if (idField != null) {
 			id = getMapper().convertValue(recordMap.get(idField), String.class);
@@ -259,7 +418,7 @@ public class ElasticSearch {
 		return id;
 	}
 
-	private static Map<String, Object> convertToMap(Object record) {
+	static Map<String, Object> convertToMap(Object record) {
 		Map<String, Object> recordMap;
 		if (record instanceof Map)
 			recordMap = (Map<String, Object>) record;
@@ -288,6 +447,47 @@ public class ElasticSearch {
 		}
 	}
 
+	/**
+	 * executes a search query and binds each hit to the given class
+	 * 
+	 * @param index
+	 * @param query
+	 * @param from
+	 * @param limit
+	 * @param explain
+	 * @param clazz
+	 * @return
+	 */
+	public static <T> List<T> executeQuery(String index, QueryBuilder query,
+			int from, int limit, boolean explain, Class<T> clazz) {
+		return executeQuery(index, query, from, limit, explain, clazz, null);
+	}
+
+	/**
+	 * @param options
+	 *            - overrides the default search options, may be null
+	 * @see #executeQuery(String, QueryBuilder, int, int, boolean, Class)
+	 */
+	public static <T> List<T> executeQuery(String index, QueryBuilder query,
+			int from, int limit, boolean explain, Class<T> clazz,
+			SearchOptions options) {
+		Metrics.Timer timer = Metrics.start("executeQuery", index);
+		List<T> results = new ArrayList<T>();
+		try {
+			SearchResponse response = prepareQuery(index, query, from, limit,
+					explain, options).execute().actionGet();
+			for (SearchHit hit : response.getHits())
+				results.add(readSource(hit.sourceRef(), clazz));
+			timer.success();
+		} catch (Exception e) {
+			Logger.error(e.getMessage());
+			e.printStackTrace();
+		} finally {
+			timer.stop();
+		}
+		return results;
+	}
+
 	/**
 	 * executes a search query and returns a map of results
 	 * 
@@ -303,49 +503,173 @@ public class ElasticSearch {
 	public static List<Map<String, Object>> executeQuery(String index,
 			String[] srcFields, String[] destFields, QueryBuilder query,
 			int from, int limit, boolean explain) {
-		List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
-		try {
-			SearchRequestBuilder search = client.prepareSearch(index);
-			search.setQuery(query).setExplain(explain).setFrom(from);
+		return executeQuery(index, srcFields, destFields, query, from, limit,
+				explain, null);
+	}
 
-			/**
-			 * note the default elastic search result size is small (10 hits I
-			 * think)
-			 */
-			if (limit != 0)
-				search.setSize(limit);
+	/**
+	 * @param options
+	 *            - overrides the default search options, may be null
+	 * @see #executeQuery(String, String[], String[], QueryBuilder, int, int,
+	 *      boolean)
+	 */
+	public static List<Map<String, Object>> executeQuery(String index,
+			String[] srcFields, String[] destFields, QueryBuilder query,
+			int from, int limit, boolean explain, SearchOptions options) {
+		String cacheKey = null;
+		if (QueryCache.isEnabled()) {
+			cacheKey = QueryCache.key(index, srcFields, destFields, query,
+					from, limit, explain, options);
+			List<Map<String, Object>> cached = QueryCache.get(cacheKey);
+			if (cached != null)
+				return cached;
+		}
 
-			search.setOperationThreading(threadingModel).setSearchType(
-					searchType);
+		Metrics.Timer timer = Metrics.start("executeQuery", index);
+		List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+		try {
+			SearchRequestBuilder search = prepareQuery(index, query, from,
+					limit, explain, options);
 
 			SearchResponse response = search.execute().actionGet();
 			convertToMap(srcFields, destFields, results, response);
 
+			if (cacheKey != null)
+				QueryCache.put(index, cacheKey, results);
+			timer.success();
 		} catch (Exception e) {
 			Logger.error(e.getMessage());
 			e.printStackTrace();
+		} finally {
+			timer.stop();
 		}
 		return results;
 	}
 
+	/**
+	 * @see #executeQuery(String, String[], String[], QueryBuilder, int, int,
+	 *      boolean)
+	 */
+	public static Promise<List<Map<String, Object>>> executeQueryAsync(
+			String index, String[] srcFields, String[] destFields,
+			QueryBuilder query, int from, int limit, boolean explain) {
+		return executeQueryAsync(index, srcFields, destFields, query, from,
+				limit, explain, null);
+	}
+
+	/**
+	 * @see #executeQuery(String, String[], String[], QueryBuilder, int, int,
+	 *      boolean, SearchOptions)
+	 */
+	public static Promise<List<Map<String, Object>>> executeQueryAsync(
+			final String index, final String[] srcFields,
+			final String[] destFields, QueryBuilder query, int from,
+			int limit, boolean explain, SearchOptions options) {
+		final String cacheKey;
+		if (QueryCache.isEnabled()) {
+			cacheKey = QueryCache.key(index, srcFields, destFields, query,
+					from, limit, explain, options);
+			List<Map<String, Object>> cached = QueryCache.get(cacheKey);
+			if (cached != null)
+				return redeemed(cached);
+		} else
+			cacheKey = null;
+
+		PromiseListener<SearchResponse, List<Map<String, Object>>> listener = new PromiseListener<SearchResponse, List<Map<String, Object>>>(
+				Metrics.start("executeQueryAsync", index)) {
+			protected List<Map<String, Object>> convert(SearchResponse response) {
+				List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+				convertToMap(srcFields, destFields, results, response);
+				if (cacheKey != null)
+					QueryCache.put(index, cacheKey, results);
+				return results;
+			}
+		};
+		prepareQuery(index, query, from, limit, explain, options).execute(
+				listener);
+		return listener.promise;
+	}
+
+	private static SearchRequestBuilder prepareQuery(String index,
+			QueryBuilder query, int from, int limit, boolean explain,
+			SearchOptions options) {
+		if (QueryLog.isEnabled())
+			QueryLog.sample(index, query);
+		SearchRequestBuilder search = getClient().prepareSearch(index);
+		search.setQuery(query).setExplain(explain).setFrom(from);
+
+		/**
+		 * note the default elastic search result size is small (10 hits I
+		 * think)
+		 */
+		if (limit != 0)
+			search.setSize(limit);
+
+		if (options == null)
+			options = queryDefaults;
+		else
+			options = options.withDefaults(queryDefaults);
+		return options.apply(search);
+	}
+
 	public static Map<String, Object> getById(String index, String type,
 			String id) {
+		Map<String, Object> cached = DocumentCache.getSource(index, type, id);
+		if (cached != null)
+			return cached;
+
+		String generation = DocumentCache.isEnabled(index) ? IndexGenerations
+				.of(index) : null;
+		Metrics.Timer timer = Metrics.start("getById", index);
 		try {
 
 			GetResponse response = getClient().prepareGet(index, type, id)
 					.execute().actionGet();
+			timer.success();
 
 			if (!response.exists())
 				return null;
-			else
-				return response.getSource();
+
+			Map<String, Object> source = response.getSource();
+			if (generation != null)
+				DocumentCache.putSource(index, type, id, source, generation);
+			return source;
 		} catch (Exception e) {
 			e.printStackTrace();
 			Logger.error(e.getMessage());
 			return null;
+		} finally {
+			timer.stop();
 		}
 	}
 
+	/**
+	 * @return a promise of the document source, or null if it does not exist
+	 */
+	public static Promise<Map<String, Object>> getByIdAsync(
+			final String index, final String type, final String id) {
+		Map<String, Object> cached = DocumentCache.getSource(index, type, id);
+		if (cached != null)
+			return redeemed(cached);
+
+		final String generation = DocumentCache.isEnabled(index) ? IndexGenerations
+				.of(index) : null;
+		PromiseListener<GetResponse, Map<String, Object>> listener = new PromiseListener<GetResponse, Map<String, Object>>(
+				Metrics.start("getByIdAsync", index)) {
+			protected Map<String, Object> convert(GetResponse response) {
+				if (!response.exists())
+					return null;
+				Map<String, Object> source = response.getSource();
+				if (generation != null)
+					DocumentCache.putSource(index, type, id, source,
+							generation);
+				return source;
+			}
+		};
+		getClient().prepareGet(index, type, id).execute(listener);
+		return listener.promise;
+	}
+
 	public static String getJson(Object object) {
 		String json = null;
 		try {
@@ -363,50 +687,269 @@ public class ElasticSearch {
 
 	public static <T> T getObject(String index, String type, String id,
 			Class<T> clazz) {
+		T cached = DocumentCache.getObject(index, type, id, clazz);
+		if (cached != null)
+			return cached;
+
+		String generation = DocumentCache.isEnabled(index) ? IndexGenerations
+				.of(index) : null;
+		Metrics.Timer timer = Metrics.start("getObject", index);
 		try {
-			Map<String, Object> map = getById(index, type, id);
-			ObjectMapper mapper = getMapper();
-			String json = mapper.writeValueAsString(map);
-			return mapper.readValue(json, clazz);
-		} catch (JsonGenerationException e) {
-			e.printStackTrace();
-		} catch (JsonMappingException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
+			T object;
+			Map<String, Object> source = DocumentCache.getSource(index, type,
+					id);
+			if (source != null)
+				object = getMapper().convertValue(source, clazz);
+			else {
+				GetResponse response = getClient().prepareGet(index, type, id)
+						.execute().actionGet();
+				if (!response.exists()) {
+					timer.success();
+					return null;
+				}
+				object = readObject(index, type, id, response, clazz,
+						generation);
+			}
+			if (generation != null)
+				DocumentCache.putObject(index, type, id, object, generation);
+			timer.success();
+			return object;
+		} catch (Exception e) {
 			e.printStackTrace();
+			Logger.error(e.getMessage());
+			return null;
+		} finally {
+			timer.stop();
 		}
-		return null;
+	}
+
+	/**
+	 * @return a promise of the document, or null if it does not exist
+	 */
+	public static <T> Promise<T> getObjectAsync(final String index,
+			final String type, final String id, final Class<T> clazz) {
+		T cached = DocumentCache.getObject(index, type, id, clazz);
+		if (cached != null)
+			return redeemed(cached);
+
+		final String generation = DocumentCache.isEnabled(index) ? IndexGenerations
+				.of(index) : null;
+		Map<String, Object> source = DocumentCache.getSource(index, type, id);
+		if (source != null) {
+			T object = getMapper().convertValue(source, clazz);
+			DocumentCache.putObject(index, type, id, object, generation);
+			return redeemed(object);
+		}
+
+		PromiseListener<GetResponse, T> listener = new PromiseListener<GetResponse, T>(
+				Metrics.start("getObjectAsync", index)) {
+			protected T convert(GetResponse response) throws IOException {
+				if (!response.exists())
+					return null;
+				T object = readObject(index, type, id, response, clazz,
+						generation);
+				if (generation != null)
+					DocumentCache.putObject(index, type, id, object,
+							generation);
+				return object;
+			}
+		};
+		getClient().prepareGet(index, type, id).execute(listener);
+		return listener.promise;
+	}
+
+	/**
+	 * @return the indices as the index tag of {@link Metrics}
+	 */
+	private static String indexName(String[] indices) {
+		return indices == null || indices.length == 0 ? null : StringUtils
+				.join(indices, ',');
+	}
+
+	private static <T> Promise<T> redeemed(T value) {
+		Promise<T> promise = new Promise<T>();
+		promise.invoke(value);
+		return promise;
+	}
+
+	/**
+	 * invalidates cached queries and the cached document after a write
+	 */
+	static void written(String index, String type, String id) {
+		IndexGenerations.bump(index);
+		DocumentCache.invalidate(index, type, id);
+	}
+
+	/**
+	 * invalidates cached queries and documents after a bulk write
+	 */
+	static void written(String index) {
+		IndexGenerations.bump(index);
+		DocumentCache.invalidate(index);
+	}
+
+	/**
+	 * binds a fetched document to the class. for cached indexes the source is
+	 * parsed once, cached and converted; otherwise the raw bytes are read
+	 * directly.
+	 */
+	private static <T> T readObject(String index, String type, String id,
+			GetResponse response, Class<T> clazz, String generation)
+			throws IOException {
+		if (generation == null)
+			return readSource(response.sourceRef(), clazz);
+		Map<String, Object> source = response.getSource();
+		DocumentCache.putSource(index, type, id, source, generation);
+		return getMapper().convertValue(source, clazz);
+	}
+
+	/**
+	 * binds the raw source bytes of a document straight to the class,
+	 * without building the source map first
+	 */
+	static <T> T readSource(BytesReference source, Class<T> clazz)
+			throws IOException {
+		ObjectReader reader = getReader(clazz);
+		if (source.hasArray())
+			return reader.<T> readValue(source.array(), source.arrayOffset(),
+					source.length());
+		return reader.<T> readValue(source.streamInput());
+	}
+
+	private static ObjectReader getReader(Class<?> clazz) {
+		ObjectReader reader = readers.get(clazz);
+		if (reader == null) {
+			reader = getMapper().reader(clazz);
+			readers.put(clazz, reader);
+		}
+		return reader;
 	}
 
 	public static String saveJson(String index, String type, String id,
 			String data) {
+		return executeSave("saveJson", index, type,
+				prepareSaveJson(index, type, id, data));
+	}
+
+	/**
+	 * @return a promise of the id of the saved document
+	 */
+	public static Promise<String> saveJsonAsync(String index, String type,
+			String id, String data) {
+		return executeSaveAsync("saveJsonAsync", index,
+				prepareSaveJson(index, type, id, data));
+	}
+
+	private static IndexRequestBuilder prepareSaveJson(String index,
+			String type, String id, String data) {
 		IndexRequestBuilder request = getClient().prepareIndex(index, type);
 		if (id != null && !StringUtils.isBlank(id))
 			request.setId(id);
 		request.setSource(data);
 		request.setConsistencyLevel(writeConsistency);
-		return request.execute().actionGet().id();
+		return request;
 	}
 
+	/**
+	 * with elasticsearch.writebehind enabled the document is only queued, see
+	 * {@link WriteBehind}
+	 */
 	public static String saveMap(String index, String type, String id,
 			Map<String, Object> data) {
+		if (WriteBehind.isEnabled())
+			return WriteBehind.add(index, type, id, SourceWriter.toSource(data));
+		return executeSave("saveMap", index, type,
+				prepareSaveSource(index, type, id, data));
+	}
+
+	/**
+	 * with elasticsearch.writebehind enabled the document is only queued and
+	 * the promise is redeemed straight away, see {@link WriteBehind}
+	 *
+	 * @return a promise of the id of the saved document
+	 */
+	public static Promise<String> saveMapAsync(String index, String type,
+			String id, Map<String, Object> data) {
+		if (WriteBehind.isEnabled())
+			return redeemed(WriteBehind.add(index, type, id,
+					SourceWriter.toSource(data)));
+		return executeSaveAsync("saveMapAsync", index,
+				prepareSaveSource(index, type, id, data));
+	}
+
+	/**
+	 * serializes a map or an object straight to the source bytes of the
+	 * request
+	 */
+	private static IndexRequestBuilder prepareSaveSource(String index,
+			String type, String id, Object record) {
 		IndexRequestBuilder request = getClient().prepareIndex(index, type);
 		if (id != null && !StringUtils.isBlank(id))
 			request.setId(id);
-		request.setSource(data);
+		byte[] source = SourceWriter.toSource(record);
+		if (Logger.isDebugEnabled())
+			Logger.debug("Saving: " + new String(source, Charsets.UTF_8));
+		request.setSource(source);
 		request.setConsistencyLevel(writeConsistency);
-		return request.execute().actionGet().id();
+		return request;
+	}
+
+	private static String executeSave(String operation, String index,
+			String type, IndexRequestBuilder request) {
+		Metrics.Timer timer = Metrics.start(operation, index);
+		try {
+			IndexResponse response = request.execute().actionGet();
+			written(index, type, response.id());
+			timer.success();
+			return response.id();
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private static Promise<String> executeSaveAsync(String operation,
+			final String index, IndexRequestBuilder request) {
+		PromiseListener<IndexResponse, String> listener = new PromiseListener<IndexResponse, String>(
+				Metrics.start(operation, index)) {
+			protected String convert(IndexResponse response) {
+				written(index, response.type(), response.id());
+				return response.id();
+			}
+		};
+		request.execute(listener);
+		return listener.promise;
 	}
 
 	public static void createIndex(String index) {
 		getClient().prepareIndex(index, "").setCreate(true);
 	}
 
+	/**
+	 * with elasticsearch.writebehind enabled the document is only queued, see
+	 * {@link WriteBehind}
+	 */
 	public static String saveObject(String index, String type, String id,
 			Object object) {
-		String json = getJson(object);
-		Logger.debug("Saving: " + json);
-		return saveJson(index, type, id, json);
+		if (WriteBehind.isEnabled())
+			return WriteBehind.add(index, type, id,
+					SourceWriter.toSource(object));
+		return executeSave("saveObject", index, type,
+				prepareSaveSource(index, type, id, object));
+	}
+
+	/**
+	 * with elasticsearch.writebehind enabled the document is only queued and
+	 * the promise is redeemed straight away, see {@link WriteBehind}
+	 *
+	 * @return a promise of the id of the saved document
+	 */
+	public static Promise<String> saveObjectAsync(String index, String type,
+			String id, Object object) {
+		if (WriteBehind.isEnabled())
+			return redeemed(WriteBehind.add(index, type, id,
+					SourceWriter.toSource(object)));
+		return executeSaveAsync("saveObjectAsync", index,
+				prepareSaveSource(index, type, id, object));
 	}
 
 	public static void setFieldAsGeoPoint(String fieldName) {
@@ -443,60 +986,370 @@ public class ElasticSearch {
 		request.execute().actionGet();
 	}
 
+	/**
+	 * deletes the document. the index is refreshed before returning, together
+	 * with other deletes in the same refresh window, see
+	 * {@link RefreshCoordinator}. each call waits for the window and the
+	 * refresh, so to delete many documents from one thread use
+	 * {@link #deleteAll}, {@link #deleteByQuery} or
+	 * {@link #delete(String, String, String, boolean)}.
+	 */
 	public static void delete(String index, String type, String id) {
-		DeleteResponse response = ElasticSearch.client
-				.prepareDelete(index, type, id)
-				.setConsistencyLevel(writeConsistency)
-				.setRefresh(refreshOnDelete).execute().actionGet();
+		delete(index, type, id, true);
+	}
+
+	/**
+	 * @param wait
+	 *            - false to return without waiting for the refresh. the
+	 *            refresh is still requested and merged with the others of
+	 *            the window, so a loop of deletes causes a few refreshes
+	 *            instead of one per document.
+	 * @see #delete(String, String, String)
+	 */
+	public static void delete(String index, String type, String id,
+			boolean wait) {
+		Metrics.Timer timer = Metrics.start("delete", index);
+		DeleteResponse response;
+		try {
+			response = prepareDelete(index, type, id).execute().actionGet();
+			written(index, type, id);
+			if (refreshOnDelete) {
+				if (wait)
+					RefreshCoordinator.refreshAndWait(index);
+				else
+					RefreshCoordinator.refresh(index);
+			}
+			timer.success();
+		} finally {
+			timer.stop();
+		}
 		if (response.notFound())
 			Logger.warn("Delete failed because id was not found : " + id);
 	}
 
+	/**
+	 * @return a promise that is true if the document was found and deleted,
+	 *         redeemed once the delete is visible to searches
+	 */
+	public static Promise<Boolean> deleteAsync(final String index,
+			final String type, final String id) {
+		final Promise<Boolean> promise = new Promise<Boolean>();
+		final Metrics.Timer timer = Metrics.start("deleteAsync", index);
+		ActionListener<DeleteResponse> listener = new ActionListener<DeleteResponse>() {
+
+			public void onResponse(DeleteResponse response) {
+				written(index, type, id);
+				if (response.notFound())
+					Logger.warn("Delete failed because id was not found : "
+							+ id);
+				final boolean deleted = !response.notFound();
+				timer.success();
+				if (!refreshOnDelete) {
+					timer.stop();
+					promise.invoke(deleted);
+					return;
+				}
+				RefreshCoordinator.refresh(index).onRedeem(
+						new Action<Promise<Boolean>>() {
+							public void invoke(Promise<Boolean> refreshed) {
+								timer.stop();
+								promise.invoke(deleted);
+							}
+						});
+			}
+
+			public void onFailure(Throwable e) {
+				timer.stop();
+				promise.invokeWithException(e);
+			}
+		};
+		prepareDelete(index, type, id).execute(listener);
+		return promise;
+	}
+
+	private static DeleteRequestBuilder prepareDelete(String index,
+			String type, String id) {
+		return getClient().prepareDelete(index, type, id)
+				.setConsistencyLevel(writeConsistency);
+	}
+
+	/**
+	 * deletes many documents with bulk requests, then refreshes the index
+	 * once
+	 * 
+	 * @return timings and failures of each bulk request
+	 */
+	public static BulkResult deleteAll(String index, String type,
+			Collection<String> ids) {
+		if (ids == null || ids.isEmpty())
+			return new BulkResult();
+
+		Metrics.Timer timer = Metrics.start("deleteAll", index);
+		BulkResult result;
+		BulkIndexer indexer = BulkIndexer.create(getClient());
+		try {
+			try {
+				for (String id : ids)
+					indexer.add(prepareDelete(index, type, id));
+			} finally {
+				result = indexer.close();
+				written(index);
+			}
+			if (refreshOnDelete)
+				RefreshCoordinator.refreshAndWait(index);
+			if (!result.hasFailures())
+				timer.success();
+		} finally {
+			timer.stop();
+		}
+
+		if (result.hasFailures())
+			Logger.error("Failed to delete elements: "
+					+ result.buildFailureMessage());
+		return result;
+	}
+
+	/**
+	 * deletes every document of the type that matches the query, then
+	 * refreshes the index once
+	 */
+	public static DeleteByQueryResponse deleteByQuery(String index,
+			String type, QueryBuilder query) {
+		Metrics.Timer timer = Metrics.start("deleteByQuery", index);
+		DeleteByQueryResponse response;
+		try {
+			try {
+				response = getClient().prepareDeleteByQuery(index)
+						.setTypes(type).setQuery(query)
+						.setConsistencyLevel(writeConsistency).execute()
+						.actionGet();
+			} finally {
+				written(index);
+			}
+			if (refreshOnDelete)
+				RefreshCoordinator.refreshAndWait(index);
+			timer.success();
+		} finally {
+			timer.stop();
+		}
+		return response;
+	}
+
 	public static SearchResponse findAll(int from, String... indices) {
+		return findAll(from, SearchOptions.defaults(), indices);
+	}
+
+	/**
+	 * @param options
+	 *            - overrides the search options of application.conf, may be
+	 *            null
+	 */
+	public static SearchResponse findAll(int from, SearchOptions options,
+			String... indices) {
+		Metrics.Timer timer = Metrics.start("findAll", indexName(indices));
 		try {
-			QueryBuilder query;
-			query = QueryBuilders.matchAllQuery();
-			SearchResponse searchResponse = ElasticSearch.getClient()
-					.prepareSearch(indices).setQuery(query).setFrom(from)
-					.execute().actionGet();
+			SearchResponse searchResponse = prepareFindAll(from, options,
+					indices).execute().actionGet();
+			timer.success();
 			return searchResponse;
 		} catch (Exception e) {
 			Logger.error(e.getMessage());
 			return null;
+		} finally {
+			timer.stop();
 		}
 	}
 
+	public static Promise<SearchResponse> findAllAsync(int from,
+			String... indices) {
+		return executeSearch("findAllAsync", indexName(indices),
+				prepareFindAll(from, SearchOptions.defaults(), indices));
+	}
+
+	private static SearchRequestBuilder prepareFindAll(int from,
+			SearchOptions options, String... indices) {
+		QueryBuilder query;
+		query = QueryBuilders.matchAllQuery();
+		return withDefaults(options).apply(
+				ElasticSearch.getClient().prepareSearch(indices)
+						.setQuery(query).setFrom(from));
+	}
+
 	public static SearchResponse search(String term, int from,
 			String... indicies) {
+		return search(term, from, SearchOptions.defaults(), indicies);
+	}
+
+	/**
+	 * @param options
+	 *            - overrides the search options of application.conf, may be
+	 *            null
+	 */
+	public static SearchResponse search(String term, int from,
+			SearchOptions options, String... indicies) {
+		Metrics.Timer timer = Metrics.start("search", indexName(indicies));
 		try {
-			QueryBuilder query = QueryBuilders.wildcardQuery("_all",
-					term.toLowerCase());
-			SearchResponse searchResponse = ElasticSearch.getClient()
-					.prepareSearch(indicies).setQuery(query).setFrom(from)
-					.execute().actionGet();
+			SearchResponse searchResponse = prepareSearch(term, from,
+					options, indicies).execute().actionGet();
+			timer.success();
 			return searchResponse;
 		} catch (Exception e) {
 			Logger.error(e.getMessage());
 			return null;
+		} finally {
+			timer.stop();
 		}
 	}
 
+	public static Promise<SearchResponse> searchAsync(String term, int from,
+			String... indicies) {
+		return executeSearch("searchAsync", indexName(indicies),
+				prepareSearch(term, from, SearchOptions.defaults(), indicies));
+	}
+
+	private static SearchRequestBuilder prepareSearch(String term, int from,
+			SearchOptions options, String... indicies) {
+		QueryBuilder query = QueryBuilders.wildcardQuery("_all",
+				term.toLowerCase());
+		return withDefaults(options).apply(
+				ElasticSearch.getClient().prepareSearch(indicies)
+						.setQuery(query).setFrom(from));
+	}
+
+	/**
+	 * fills in what the per call options leave unset from application.conf
+	 */
+	private static SearchOptions withDefaults(SearchOptions options) {
+		if (options == null)
+			return SearchOptions.defaults();
+		return options.withDefaults(SearchOptions.defaults());
+	}
+
+	/**
+	 * indexes every prefix of the words of these fields, for
+	 * {@link #suggest(String, String, String, int)} and
+	 * {@link #prefixSearch(String, String, int, String...)}
+	 *
+	 * @see Autocomplete#provision(String, String, String...)
+	 */
+	public static void enableAutocomplete(String index, String type,
+			String... fields) {
+		Autocomplete.provision(index, type, fields);
+	}
+
+	/**
+	 * @return up to n distinct values of an autocomplete field starting with
+	 *         the prefix
+	 */
+	public static List<String> suggest(String index, String field,
+			String prefix, int n) {
+		Metrics.Timer timer = Metrics.start("suggest", index);
+		try {
+			List<String> suggestions = Autocomplete.suggest(index, field,
+					prefix, n);
+			timer.success();
+			return suggestions;
+		} catch (Exception e) {
+			Logger.error(e.getMessage());
+			return new ArrayList<String>();
+		} finally {
+			timer.stop();
+		}
+	}
+
+	/**
+	 * like {@link #search(String, int, String...)} but matches the words of
+	 * an autocomplete field by prefix, without a wildcard query
+	 */
+	public static SearchResponse prefixSearch(String field, String prefix,
+			int from, String... indicies) {
+		Metrics.Timer timer = Metrics.start("prefixSearch",
+				indexName(indicies));
+		try {
+			SearchResponse response = SearchOptions
+					.defaults()
+					.apply(ElasticSearch.getClient().prepareSearch(indicies)
+							.setQuery(Autocomplete.query(field, prefix))
+							.setFrom(from)).execute().actionGet();
+			timer.success();
+			return response;
+		} catch (Exception e) {
+			Logger.error(e.getMessage());
+			return null;
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private static Promise<SearchResponse> executeSearch(String operation,
+			String index, SearchRequestBuilder request) {
+		PromiseListener<SearchResponse, SearchResponse> listener = new PromiseListener<SearchResponse, SearchResponse>(
+				Metrics.start(operation, index)) {
+			protected SearchResponse convert(SearchResponse response) {
+				return response;
+			}
+		};
+		request.execute(listener);
+		return listener.promise;
+	}
+
+	/**
+	 * streams every hit of a query to the handler with a scan search, using
+	 * constant memory however many documents match. use this instead of
+	 * paging with from to export or reindex large indices.
+	 * 
+	 * @param index
+	 * @param query
+	 * @param batchSize
+	 *            - hits fetched per shard and request
+	 * @param handler
+	 * @return the number of hits passed to the handler
+	 */
+	public static long scan(String index, QueryBuilder query, int batchSize,
+			ScanHandler handler) {
+		Metrics.Timer timer = Metrics.start("scan", index);
+		try {
+			ScrollIterator hits = scan(index, query, batchSize);
+			long count = 0;
+			while (hits.hasNext()) {
+				count++;
+				if (!handler.onHit(hits.next()))
+					break;
+			}
+			timer.success();
+			return count;
+		} finally {
+			timer.stop();
+		}
+	}
+
+	/**
+	 * @return an iterator that fetches the hits of the query batch by batch
+	 * @see #scan(String, QueryBuilder, int, ScanHandler)
+	 */
+	public static ScrollIterator scan(String index, QueryBuilder query,
+			int batchSize) {
+		return new ScrollIterator(getClient(), index, query, batchSize);
+	}
+
 	public static void setRestApiAccess(boolean allow) {
 		Session current = Session.current();
 		if (current == null)
 			Logger.error("No current request!");
-		else {
-			Logger.debug("setRestApiAccess - "
-					+ (allow ? "allowed" : "NOT ALLOWED") + " for session"
-					+ current.getId());
-			Cache.set(ES_REST_API_KEY + Session.current().getId(), allow);
-		}
+		else
+			setRestApiAccess(allow, current.getId());
 	}
 
+	/**
+	 * allows or denies the key, this JVM sees the change immediately. see
+	 * {@link AccessCache}
+	 */
 	public static void setRestApiAccess(boolean allow, String key) {
-		Logger.debug("setRestApiAccess - "
-				+ (allow ? "allowed" : "NOT ALLOWED") + " for token " + key);
-		Cache.set(ES_REST_API_KEY +key, allow);
+		if (Logger.isDebugEnabled())
+			Logger.debug("setRestApiAccess - "
+					+ (allow ? "allowed" : "NOT ALLOWED") + " for " + key);
+		Cache.set(ES_REST_API_KEY + key, allow);
+		AccessCache.put(ES_REST_API_KEY + key, allow);
 	}
 
 	public static boolean getRestApiAccess() {
@@ -513,10 +1366,10 @@ public class ElasticSearch {
 
 	public static boolean getRestApiAccess(String key) {
 
-		boolean allowed = BooleanUtils.isTrue(Cache.get(ES_REST_API_KEY + key,
-				Boolean.class));
-		Logger.debug("getRestApiAccess - " + (allowed ? "OK" : "NOT ALLOWED")
-				+ " for session" + key);
+		boolean allowed = AccessCache.isAllowed(ES_REST_API_KEY + key);
+		if (Logger.isDebugEnabled())
+			Logger.debug("getRestApiAccess - "
+					+ (allowed ? "OK" : "NOT ALLOWED") + " for session" + key);
 
 		return allowed;
 	}
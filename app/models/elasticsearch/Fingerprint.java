@@ -0,0 +1,151 @@
+package models.elasticsearch;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectWriter;
+import org.codehaus.jackson.map.SerializationConfig;
+
+import play.libs.Codec;
+
+/**
+ * content fingerprints used by {@link ElasticSearch#bulkUpdate} to detect
+ * changed records without loading and comparing the whole document.
+ *
+ * when fingerprinting is enabled every write through the facade (except
+ * saveJson, which stores the given json untouched) adds a hash of the
+ * canonical json of the record to the {@link #FIELD} field. bulkUpdate then
+ * only fetches that field and compares hashes.
+ *
+ * enable it in application.conf with elasticsearch.fingerprint=true and call
+ * {@link #putMapping(String, String)} before adding data so the hash is
+ * stored on its own instead of being extracted from the source.
+ */
+public class Fingerprint {
+
+	public static final String FIELD = "es_play_fingerprint";
+
+	private static volatile boolean enabled = Config.getBoolean(
+			"elasticsearch.fingerprint", false);
+
+	private static volatile ObjectMapper canonicalMapper;
+
+	private static final ConcurrentMap<Class<?>, ObjectWriter> canonicalWriters = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		Fingerprint.enabled = enabled;
+	}
+
+	/**
+	 * stores the fingerprint field as a not analyzed, not indexed stored field
+	 */
+	public static void putMapping(String index, String type) {
+		Map<String, Object> field = new HashMap<String, Object>();
+		field.put("type", "string");
+		field.put("index", "no");
+		field.put("store", "yes");
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(FIELD, field);
+		Map<String, Object> mapping = new HashMap<String, Object>();
+		mapping.put("properties", properties);
+		Map<String, Object> mappingSource = new HashMap<String, Object>();
+		mappingSource.put(type, mapping);
+
+		ElasticSearch.getClient().admin().indices().preparePutMapping(index)
+				.setType(type).setSource(mappingSource).execute().actionGet();
+	}
+
+	/**
+	 * hash of the record with keys and properties in alphabetical order, so
+	 * the same content always gives the same fingerprint, whether it is
+	 * given as an object or as a map. an existing fingerprint field is
+	 * ignored.
+	 */
+	public static String of(Object record) {
+		record = withoutField(record);
+		try {
+			byte[] canonical = getCanonicalWriter(record.getClass())
+					.writeValueAsBytes(record);
+			return Codec.byteToHexString(MessageDigest.getInstance("MD5")
+					.digest(canonical));
+		} catch (IOException e) {
+			throw new IllegalArgumentException("could not serialize record", e);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the record, or a copy without the fingerprint field if it is a
+	 *         map read back from the index
+	 */
+	static Object withoutField(Object record) {
+		if (record instanceof Map && ((Map) record).containsKey(FIELD)) {
+			Map<String, Object> copy = new HashMap<String, Object>(
+					(Map<String, Object>) record);
+			copy.remove(FIELD);
+			return copy;
+		}
+		return record;
+	}
+
+	/**
+	 * adds the fingerprint field to the end of a serialized json object,
+	 * which must not contain the field already, see {@link #withoutField}
+	 */
+	static byte[] append(byte[] json, String fingerprint) {
+		int end = json.length - 1;
+		while (end > 0 && Character.isWhitespace(json[end]))
+			end--;
+		int last = end - 1;
+		while (last > 0 && Character.isWhitespace(json[last]))
+			last--;
+		if (json[end] != '}')
+			throw new IllegalArgumentException("record is not a json object");
+
+		byte[] field = ((json[last] == '{' ? "" : ",") + "\"" + FIELD
+				+ "\":\"" + fingerprint + "\"}").getBytes();
+		byte[] source = Arrays.copyOf(json, end + field.length);
+		System.arraycopy(field, 0, source, end, field.length);
+		return source;
+	}
+
+	private static ObjectWriter getCanonicalWriter(Class<?> clazz) {
+		ObjectWriter writer = canonicalWriters.get(clazz);
+		if (writer == null) {
+			writer = getCanonicalMapper().writerWithType(clazz);
+			canonicalWriters.put(clazz, writer);
+		}
+		return writer;
+	}
+
+	private static ObjectMapper getCanonicalMapper() {
+		if (canonicalMapper == null) {
+			synchronized (Fingerprint.class) {
+				if (canonicalMapper == null) {
+					ObjectMapper mapper = new ObjectMapper();
+					mapper.configure(
+							SerializationConfig.Feature.WRITE_SORTED_MAP_ENTRIES,
+							true);
+					mapper.configure(
+							SerializationConfig.Feature.SORT_PROPERTIES_ALPHABETICALLY,
+							true);
+					canonicalMapper = mapper;
+				}
+			}
+		}
+		return canonicalMapper;
+	}
+
+}
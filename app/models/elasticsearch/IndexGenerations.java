@@ -0,0 +1,80 @@
+package models.elasticsearch;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * a counter per index that is incremented by every write through the
+ * {@link ElasticSearch} facade. caches include the generation in their keys,
+ * so a write makes every cached result of that index unreachable.
+ *
+ * writes made directly with the client or through the REST API are not
+ * counted, nor are aliases or wildcards resolved to the indices they cover.
+ */
+public class IndexGenerations {
+
+	private static final ConcurrentMap<String, Generation> generations = new ConcurrentHashMap<String, Generation>();
+
+	static class Generation {
+		volatile long value;
+		volatile long lastWrite;
+	}
+
+	/**
+	 * records a completed write to one or more comma separated indices
+	 */
+	public static void bump(String index) {
+		long now = System.currentTimeMillis();
+		for (String name : split(index)) {
+			Generation generation = get(name);
+			synchronized (generation) {
+				generation.value++;
+				generation.lastWrite = now;
+			}
+		}
+	}
+
+	/**
+	 * @return a key describing the current generation of each index
+	 */
+	public static String of(String index) {
+		String[] names = split(index);
+		if (names.length == 1)
+			return names[0] + ":" + get(names[0]).value;
+
+		StringBuilder key = new StringBuilder();
+		for (String name : names)
+			key.append(name).append(':').append(get(name).value).append(',');
+		return key.toString();
+	}
+
+	/**
+	 * @return time of the most recent write to any of the indices
+	 */
+	public static long lastWrite(String index) {
+		long lastWrite = 0;
+		for (String name : split(index))
+			lastWrite = Math.max(lastWrite, get(name).lastWrite);
+		return lastWrite;
+	}
+
+	private static Generation get(String name) {
+		Generation generation = generations.get(name);
+		if (generation == null) {
+			Generation created = new Generation();
+			generation = generations.putIfAbsent(name, created);
+			if (generation == null)
+				generation = created;
+		}
+		return generation;
+	}
+
+	private static String[] split(String index) {
+		if (index == null || index.indexOf(',') < 0)
+			return new String[] { StringUtils.defaultString(index, "_all") };
+		return StringUtils.split(index, ',');
+	}
+
+}
@@ -0,0 +1,83 @@
+package models.elasticsearch;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * reads a newline delimited json file one record at a time, so a large
+ * export never needs to be loaded into memory. blank lines are skipped.
+ */
+public class JsonLinesIterator implements Iterator<Map<String, Object>>,
+		Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+	private final FileChannel channel;
+	private final BufferedReader reader;
+
+	private String next;
+	private int lineNumber;
+
+	public JsonLinesIterator(File file) throws IOException {
+		this.file = file;
+		this.channel = new FileInputStream(file).getChannel();
+		this.reader = new BufferedReader(Channels.newReader(channel, "UTF-8"),
+				BUFFER_SIZE);
+	}
+
+	public boolean hasNext() {
+		if (next != null)
+			return true;
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (!StringUtils.isBlank(line)) {
+					next = line;
+					return true;
+				}
+			}
+			return false;
+		} catch (IOException e) {
+			throw new IllegalStateException("could not read " + file
+					+ " after line " + lineNumber, e);
+		}
+	}
+
+	public Map<String, Object> next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		String line = next;
+		next = null;
+		try {
+			return ElasticSearch.getMapper().readValue(line, Map.class);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("invalid json on line "
+					+ lineNumber + " of " + file, e);
+		}
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() throws IOException {
+		try {
+			reader.close();
+		} finally {
+			channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package models.elasticsearch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * counts latencies in power of two buckets of microseconds, from 1us up to
+ * about 35 minutes. percentiles are the upper bound of their bucket, so they
+ * are at most twice the real value, which is enough to see where time goes.
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 32;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final StripedCounter totalMicros = new StripedCounter();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		int bucket = Math.min(BUCKETS - 1,
+				64 - Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(bucket);
+		totalMicros.add(micros);
+
+		long max = maxMicros.get();
+		while (micros > max && !maxMicros.compareAndSet(max, micros))
+			max = maxMicros.get();
+	}
+
+	public long count() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			count += buckets.get(i);
+		return count;
+	}
+
+	public double meanMillis() {
+		long count = count();
+		return count == 0 ? 0 : totalMicros.sum() / 1000d / count;
+	}
+
+	public double maxMillis() {
+		return maxMicros.get() / 1000d;
+	}
+
+	/**
+	 * @param percentile
+	 *            - between 0 and 100
+	 */
+	public double percentileMillis(double percentile) {
+		long count = count();
+		if (count == 0)
+			return 0;
+		long rank = (long) Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank)
+				return Math.min(1L << i, maxMicros.get()) / 1000d;
+		}
+		return maxMillis();
+	}
+
+	/**
+	 * @return mean, p50, p90, p99 and max in milliseconds
+	 */
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<String, Object>();
+		snapshot.put("meanMillis", meanMillis());
+		snapshot.put("p50Millis", percentileMillis(50));
+		snapshot.put("p90Millis", percentileMillis(90));
+		snapshot.put("p99Millis", percentileMillis(99));
+		snapshot.put("maxMillis", maxMillis());
+		return snapshot;
+	}
+
+}
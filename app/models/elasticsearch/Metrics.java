@@ -0,0 +1,179 @@
+package models.elasticsearch;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import play.Logger;
+
+/**
+ * records count, errors, calls in flight and latency of every facade
+ * operation and proxied REST call, per operation and index.
+ *
+ * <pre>
+ * Metrics.Timer timer = Metrics.start(&quot;getObject&quot;, index);
+ * try {
+ * 	...
+ * 	timer.success();
+ * } finally {
+ * 	timer.stop();
+ * }
+ * </pre>
+ *
+ * every operation is also published over JMX as
+ * elastic-play:type=Operation,operation=...,index=... and all of them as
+ * json by {@link controllers.elasticsearch.RestAPI#metrics}. set
+ * elasticsearch.metrics=false to turn recording off.
+ *
+ * at most elasticsearch.metrics.max (default 500) operation and index pairs
+ * are kept, calls beyond that are recorded under the operation and index
+ * "other".
+ */
+public class Metrics {
+
+	public static final String DOMAIN = "elastic-play";
+
+	private static final boolean enabled = Config.getBoolean(
+			"elasticsearch.metrics", true);
+
+	/**
+	 * indices and REST paths come from callers, past this many operation and
+	 * index pairs new ones are counted together as "other"
+	 */
+	private static final int maxOperations = Config.getInt(
+			"elasticsearch.metrics.max", 500);
+
+	static final String OTHER = "other";
+
+	private static final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+
+	private static final Timer NONE = new Timer(null);
+
+	public static class Timer {
+
+		private final OperationMetrics metrics;
+		private final long start;
+		private boolean succeeded;
+		private boolean stopped;
+
+		Timer(OperationMetrics metrics) {
+			this.metrics = metrics;
+			this.start = metrics == null ? 0 : System.nanoTime();
+			if (metrics != null)
+				metrics.inFlight.incrementAndGet();
+		}
+
+		public void success() {
+			succeeded = true;
+		}
+
+		/**
+		 * counts the call as an error even if {@link #success()} was called,
+		 * for calls that completed with partial failures
+		 */
+		public void failure() {
+			succeeded = false;
+		}
+
+		/**
+		 * records the call, as an error unless {@link #success()} was called.
+		 * only the first call counts.
+		 */
+		public void stop() {
+			if (metrics == null || stopped)
+				return;
+			stopped = true;
+			metrics.inFlight.decrementAndGet();
+			metrics.count.increment();
+			if (!succeeded)
+				metrics.errors.increment();
+			metrics.latency.record(System.nanoTime() - start);
+		}
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param index
+	 *            - may be null for operations on all indices
+	 */
+	public static Timer start(String operation, String index) {
+		if (!enabled)
+			return NONE;
+		return new Timer(get(operation, index));
+	}
+
+	/**
+	 * records a call that was timed elsewhere
+	 */
+	static void record(String operation, String index, long nanos) {
+		OperationMetrics metrics = get(operation, index);
+		metrics.count.increment();
+		metrics.latency.record(nanos);
+	}
+
+	static OperationMetrics get(String operation, String index) {
+		if (index == null)
+			index = "_all";
+		String key = operation + "|" + index;
+		OperationMetrics metrics = operations.get(key);
+		if (metrics == null && operations.size() >= maxOperations) {
+			operation = OTHER;
+			index = OTHER;
+			key = OTHER + "|" + OTHER;
+			metrics = operations.get(key);
+		}
+		if (metrics == null) {
+			OperationMetrics created = new OperationMetrics(operation, index);
+			metrics = operations.putIfAbsent(key, created);
+			if (metrics == null) {
+				metrics = created;
+				register(metrics);
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * @return the metrics of every operation, the query, document and access
+	 *         cache statistics and the REST API admission statistics
+	 */
+	public static Map<String, Object> snapshot() {
+		List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
+		for (OperationMetrics metrics : operations.values())
+			list.add(metrics.snapshot());
+		Map<String, Object> snapshot = new LinkedHashMap<String, Object>();
+		snapshot.put("operations", list);
+		snapshot.put("queryCache", QueryCache.stats());
+		snapshot.put("documentCache", DocumentCache.stats());
+		snapshot.put("accessCache", AccessCache.stats());
+		snapshot.put("admission", AdmissionControl.stats());
+		return snapshot;
+	}
+
+	private static void register(OperationMetrics metrics) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(DOMAIN
+					+ ":type=Operation,operation="
+					+ ObjectName.quote(metrics.getOperation()) + ",index="
+					+ ObjectName.quote(metrics.getIndex()));
+			// left over from the previous class loader in dev mode
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(metrics, name);
+		} catch (Exception e) {
+			Logger.warn("Could not register metrics MBean : " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package models.elasticsearch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * counts, errors, calls in flight and latencies of one operation on one
+ * index, see {@link Metrics}
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+	private final String operation;
+	private final String index;
+
+	final StripedCounter count = new StripedCounter();
+	final StripedCounter errors = new StripedCounter();
+	final AtomicInteger inFlight = new AtomicInteger();
+	final LatencyHistogram latency = new LatencyHistogram();
+
+	OperationMetrics(String operation, String index) {
+		this.operation = operation;
+		this.index = index;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public String getIndex() {
+		return index;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public double getMeanMillis() {
+		return latency.meanMillis();
+	}
+
+	public double getP50Millis() {
+		return latency.percentileMillis(50);
+	}
+
+	public double getP90Millis() {
+		return latency.percentileMillis(90);
+	}
+
+	public double getP99Millis() {
+		return latency.percentileMillis(99);
+	}
+
+	public double getMaxMillis() {
+		return latency.maxMillis();
+	}
+
+	Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<String, Object>();
+		snapshot.put("operation", operation);
+		snapshot.put("index", index);
+		snapshot.put("count", getCount());
+		snapshot.put("errors", getErrors());
+		snapshot.put("inFlight", getInFlight());
+		snapshot.putAll(latency.snapshot());
+		return snapshot;
+	}
+
+}
@@ -0,0 +1,28 @@
+package models.elasticsearch;
+
+/**
+ * JMX view of the {@link OperationMetrics} of one operation on one index
+ */
+public interface OperationMetricsMBean {
+
+	String getOperation();
+
+	String getIndex();
+
+	long getCount();
+
+	long getErrors();
+
+	int getInFlight();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP90Millis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+
+}
@@ -1,8 +1,16 @@
 package models.elasticsearch;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
@@ -13,6 +21,7 @@ import org.elasticsearch.rest.RestResponse;
 import org.elasticsearch.rest.support.RestUtils;
 
 import play.Logger;
+import play.libs.F.Promise;
 import play.mvc.Http;
 import play.mvc.Http.Header;
 import play.mvc.Http.Request;
@@ -20,22 +29,50 @@ import play.mvc.Http.Response;
 
 public class PlayRestChannel implements RestChannel {
 
+	/**
+	 * elasticsearch.rest.response=buffered copies responses into play's
+	 * output buffer instead of streaming them, the way older versions did
+	 */
+	private static final boolean DIRECT_RESPONSE = !"buffered"
+			.equals(Config.get("elasticsearch.rest.response", "direct"));
+
 	final RestRequest restRequest;
 
 	final Response resp;
 
-	public final CountDownLatch latch;
+	/**
+	 * redeemed once the response has been written, so the controller can
+	 * await() it instead of blocking a thread
+	 */
+	public final Promise<PlayRestChannel> completed;
   
 	public IOException sendFailure;
 
+	/**
+	 * System.nanoTime() when elastic search handed over the response and
+	 * when it was written, see {@link RestTimings}. a streamed response is
+	 * written once play has read the stream to its end.
+	 */
+	public volatile long responseNanos;
+	public volatile long writtenNanos;
+
+	private volatile RestTimings timings;
+	private final AtomicBoolean timed = new AtomicBoolean();
+
+	/**
+	 * bytes of the response body
+	 */
+	public volatile int responseLength;
+
 	public PlayRestChannel(PlayRestRequest restRequest, Response response) {
 		this.restRequest = restRequest;
 		this.resp = response; 
-		this.latch = new CountDownLatch(1);
+		this.completed = new Promise<PlayRestChannel>();
 	}
 
 	@Override
 	public void sendResponse(RestResponse response) {
+		responseNanos = System.nanoTime();
 		Logger.debug("sending response");
 		resp.contentType = response.contentType();
 		if (RestUtils.isBrowser(restRequest.header("User-Agent"))) {
@@ -52,28 +89,130 @@ public class PlayRestChannel implements RestChannel {
 		if (opaque != null) {
 			resp.setHeader("X-Opaque-Id", opaque);
 		}
+		boolean streamed = false;
 		try {
-			int contentLength = response.contentLength()
-					+ response.prefixContentLength()
-					+ response.suffixContentLength();
-//			resp.setContentLength(contentLength);
-
-			ByteArrayOutputStream out = resp.out;
-			if (response.prefixContent() != null) {
-				out.write(response.prefixContent(), 0,
-						response.prefixContentLength());
-			}
-			out.write(response.content(), 0, response.contentLength());
-			if (response.suffixContent() != null) {
-				out.write(response.suffixContent(), 0,
-						response.suffixContentLength());
-			}
-			out.close();
+			if (DIRECT_RESPONSE) {
+				sendDirect(response);
+				streamed = true;
+			} else
+				sendBuffered(response);
 		} catch (IOException e) {
 			sendFailure = e;
-		} finally {			
-			latch.countDown();
+		} finally {
+			if (!streamed)
+				writtenNanos = System.nanoTime();
+			completed.invoke(this);
+		}
+	}
+
+	/**
+	 * hands the phases of this call to the timings once the response is
+	 * written, which for a streamed response is after the controller returned
+	 */
+	public void time(RestTimings timings) {
+		this.timings = timings;
+		if (writtenNanos != 0)
+			timed();
+	}
+
+	private void written() {
+		writtenNanos = System.nanoTime();
+		if (timings != null)
+			timed();
+	}
+
+	private void timed() {
+		if (timed.compareAndSet(false, true))
+			timings.finished(this);
+	}
+
+	/**
+	 * hands the response arrays to play as a stream, play then writes them
+	 * to the connection without copying them into resp.out first.
+	 *
+	 * play writes the stream after this returns, from its own thread. most
+	 * elastic search responses are built in a thread local buffer that is
+	 * reused for the next response of the same thread, so unless the
+	 * response says its content is thread safe the arrays are copied first.
+	 */
+	private void sendDirect(RestResponse response) throws IOException {
+		responseLength = response.contentLength()
+				+ response.prefixContentLength()
+				+ response.suffixContentLength();
+		boolean copy = !response.contentThreadSafe();
+		List<InputStream> parts = new ArrayList<InputStream>(3);
+		if (response.prefixContent() != null)
+			parts.add(part(response.prefixContent(),
+					response.prefixContentLength(), copy));
+		parts.add(part(response.content(), response.contentLength(), copy));
+		if (response.suffixContent() != null)
+			parts.add(part(response.suffixContent(),
+					response.suffixContentLength(), copy));
+
+		resp.setHeader("Content-Length", String.valueOf(responseLength));
+		resp.direct = new WrittenStream(new SequenceInputStream(
+				Collections.enumeration(parts)));
+	}
+
+	/**
+	 * stamps the write once play has read the whole response, or gave up and
+	 * closed it
+	 */
+	private class WrittenStream extends FilterInputStream {
+
+		WrittenStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read = super.read();
+			if (read == -1)
+				done();
+			return read;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length)
+				throws IOException {
+			int read = super.read(bytes, offset, length);
+			if (read == -1)
+				done();
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			super.close();
+			done();
+		}
+
+		private void done() {
+			if (writtenNanos == 0)
+				written();
+		}
+	}
+
+	private static InputStream part(byte[] bytes, int length, boolean copy) {
+		return new ByteArrayInputStream(copy ? Arrays.copyOf(bytes, length)
+				: bytes, 0, length);
+	}
+
+	private void sendBuffered(RestResponse response) throws IOException {
+		responseLength = response.contentLength()
+				+ response.prefixContentLength()
+				+ response.suffixContentLength();
+		ByteArrayOutputStream out = resp.out;
+		if (response.prefixContent() != null) {
+			out.write(response.prefixContent(), 0,
+					response.prefixContentLength());
+		}
+		out.write(response.content(), 0, response.contentLength());
+		if (response.suffixContent() != null) {
+			out.write(response.suffixContent(), 0,
+					response.suffixContentLength());
 		}
+		out.close();
 	}
 
 }
\ No newline at end of file
@@ -41,7 +41,10 @@ import play.mvc.Http.Header;
 import play.mvc.Http.Request;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -57,7 +60,7 @@ public class PlayRestRequest extends AbstractRestRequest implements
 
 	private final Map<String, String> params;
 
-	private final byte[] content;
+	private final BytesReference content;
 
 	private String path;
 
@@ -72,19 +75,58 @@ public class PlayRestRequest extends AbstractRestRequest implements
 			RestUtils.decodeQueryString(request.querystring, 0, params);
 		}
 
-		if (body == null)
-			body = IO.readContentAsString(request.body);
+		/**
+		 * the raw bytes are passed to elastic search as they are. newlines
+		 * must be kept, _bulk and _msearch bodies are newline delimited.
+		 */
+		byte[] bytes = readBody(request.body);
+		if (bytes.length == 0 && body != null)
+			// the body was already consumed when play bound the parameters
+			bytes = body.getBytes("UTF-8");
+		content = new BytesArray(bytes);
 
-		if (StringUtils.isBlank(body)
-				&& !"get".equals(request.method.toLowerCase())) {
+		if (bytes.length == 0 && !"get".equals(request.method.toLowerCase())) {
 			Logger.warn("body was empty but method != GET " + request.url);
 		} else if (Logger.isDebugEnabled())
-			Logger.debug("Executing request " + path + "\nbody=" + body);
-		/**
-		 * strip out ctrl chars that break jackson
-		 */
-		body = StringUtils.replaceChars(body, "\n\t", "  ");
-		content = body.getBytes();
+			Logger.debug("Executing request " + path + "\nbody="
+					+ content.toUtf8());
+	}
+
+	/**
+	 * reads the request body into a single array, rewinding it first in case
+	 * play already read it to parse the parameters
+	 */
+	private static byte[] readBody(InputStream in) throws IOException {
+		if (in == null)
+			return new byte[0];
+		try {
+			if (in instanceof FileInputStream)
+				((FileInputStream) in).getChannel().position(0);
+			else if (in.markSupported())
+				in.reset();
+		} catch (IOException e) {
+			// not rewindable, read whatever is left
+		}
+
+		// available() is the whole body for the streams play uses, so this
+		// is normally read without resizing
+		byte[] buffer = new byte[Math.max(in.available(), 1024)];
+		int length = 0;
+		while (true) {
+			if (length == buffer.length) {
+				int next = in.read();
+				if (next == -1)
+					break;
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				buffer[length++] = (byte) next;
+			}
+			int read = in.read(buffer, length, buffer.length - length);
+			if (read == -1)
+				break;
+			length += read;
+		}
+		return length == buffer.length ? buffer : Arrays.copyOf(buffer,
+				length);
 	}
 
 	@Override
@@ -111,9 +153,13 @@ public class PlayRestRequest extends AbstractRestRequest implements
 
 	@Override
 	public boolean hasContent() {
-		return content.length > 0;
+		return content.length() > 0;
 	}
 
+	/**
+	 * the content is a private copy of the body, it is never reused so
+	 * elastic search does not need to copy it again
+	 */
 	@Override
 	public boolean contentUnsafe() {
 		return false;
@@ -121,7 +167,7 @@ public class PlayRestRequest extends AbstractRestRequest implements
 
 	@Override
 	public BytesReference content() {
-		return new BytesArray(content);
+		return content;
 	}
 
 	@Override
@@ -0,0 +1,68 @@
+package models.elasticsearch;
+
+import org.elasticsearch.action.ActionListener;
+
+import play.libs.F.Promise;
+
+/**
+ * completes a Play promise when an elastic search action finishes, so a
+ * controller can await() the result without holding a thread while the node
+ * works on it.
+ *
+ * @param <Response>
+ *            - the elastic search response
+ * @param <T>
+ *            - the value the promise is redeemed with
+ */
+public abstract class PromiseListener<Response, T> implements
+		ActionListener<Response> {
+
+	public final Promise<T> promise = new Promise<T>();
+
+	private final Metrics.Timer timer;
+
+	public PromiseListener() {
+		this(null);
+	}
+
+	/**
+	 * @param timer
+	 *            - stopped when the action completes, may be null
+	 */
+	public PromiseListener(Metrics.Timer timer) {
+		this.timer = timer;
+	}
+
+	/**
+	 * converts the response into the value of the promise. runs on an elastic
+	 * search thread, so it should be quick.
+	 */
+	protected abstract T convert(Response response) throws Exception;
+
+	public void onResponse(Response response) {
+		T value;
+		try {
+			value = convert(response);
+		} catch (Throwable e) {
+			stopTimer(false);
+			promise.invokeWithException(e);
+			return;
+		}
+		stopTimer(true);
+		promise.invoke(value);
+	}
+
+	public void onFailure(Throwable e) {
+		stopTimer(false);
+		promise.invokeWithException(e);
+	}
+
+	private void stopTimer(boolean succeeded) {
+		if (timer == null)
+			return;
+		if (succeeded)
+			timer.success();
+		timer.stop();
+	}
+
+}
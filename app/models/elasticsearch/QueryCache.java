@@ -0,0 +1,144 @@
+package models.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+
+/**
+ * in process cache of {@link ElasticSearch#executeQuery} results. entries are
+ * keyed by the index generation (see {@link IndexGenerations}), the query and
+ * the paging arguments, so writes through the facade invalidate them.
+ *
+ * results are not cached right after a write, until elastic search has
+ * refreshed the index and the write is visible to searches.
+ *
+ * disabled by default, configure it in application.conf :
+ *
+ * <pre>
+ * elasticsearch.querycache=true
+ * elasticsearch.querycache.size=1000
+ * elasticsearch.querycache.ttl=1m
+ * # should match index.refresh_interval
+ * elasticsearch.querycache.refresh=1s
+ * </pre>
+ */
+public class QueryCache {
+
+	private static final boolean enabled = Config.getBoolean(
+			"elasticsearch.querycache", false);
+
+	private static final long refreshMillis = Config.getMillis(
+			"elasticsearch.querycache.refresh", "1s");
+
+	private static final Cache<String, List<Map<String, Object>>> cache = CacheBuilder
+			.newBuilder()
+			.maximumSize(Config.getInt("elasticsearch.querycache.size", 1000))
+			.expireAfterWrite(
+					Config.getMillis("elasticsearch.querycache.ttl", "1m"),
+					TimeUnit.MILLISECONDS).build();
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	static String key(String index, String[] srcFields, String[] destFields,
+			QueryBuilder query, int from, int limit, boolean explain,
+			SearchOptions options) {
+		return IndexGenerations.of(index) + "|" + from + "|" + limit + "|"
+				+ explain + "|" + Arrays.toString(srcFields) + "|"
+				+ Arrays.toString(destFields) + "|" + options + "|" + query;
+	}
+
+	/**
+	 * @return a deep copy of the cached results, that the caller may change,
+	 *         or null
+	 */
+	static List<Map<String, Object>> get(String key) {
+		List<Map<String, Object>> results = cache.getIfPresent(key);
+		if (results == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return copy(results);
+	}
+
+	/**
+	 * caches a deep copy, so the caller can still change the results
+	 */
+	static void put(String index, String key, List<Map<String, Object>> results) {
+		if (System.currentTimeMillis() - IndexGenerations.lastWrite(index) < refreshMillis)
+			return;
+		cache.put(key, copy(results));
+	}
+
+	private static List<Map<String, Object>> copy(
+			List<Map<String, Object>> results) {
+		List<Map<String, Object>> copy = new ArrayList<Map<String, Object>>(
+				results.size());
+		for (Map<String, Object> result : results)
+			copy.add(copy(result));
+		return copy;
+	}
+
+	/**
+	 * copies the nested maps and lists of a json source, other values are
+	 * immutable
+	 */
+	static Map<String, Object> copy(Map<String, Object> source) {
+		return (Map<String, Object>) copyValue(source);
+	}
+
+	private static Object copyValue(Object value) {
+		if (value instanceof Map) {
+			Map<String, Object> map = (Map<String, Object>) value;
+			Map<String, Object> copy = new LinkedHashMap<String, Object>(
+					map.size() * 4 / 3 + 1);
+			for (Map.Entry<String, Object> entry : map.entrySet())
+				copy.put(entry.getKey(), copyValue(entry.getValue()));
+			return copy;
+		}
+		if (value instanceof List) {
+			List<Object> list = (List<Object>) value;
+			List<Object> copy = new ArrayList<Object>(list.size());
+			for (Object item : list)
+				copy.add(copyValue(item));
+			return copy;
+		}
+		return value;
+	}
+
+	public static void clear() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * @return hits, misses, hit rate and number of cached results
+	 */
+	public static Map<String, Object> stats() {
+		long hitCount = hits.get();
+		long missCount = misses.get();
+		long requests = hitCount + missCount;
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("enabled", enabled);
+		stats.put("hits", hitCount);
+		stats.put("misses", missCount);
+		stats.put("hitRate", requests == 0 ? 0d : (double) hitCount
+				/ requests);
+		stats.put("size", cache.size());
+		return stats;
+	}
+
+}
@@ -0,0 +1,233 @@
+package models.elasticsearch;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.QueryBuilder;
+
+import play.Logger;
+import play.Play;
+
+/**
+ * samples the queries run through {@link ElasticSearch#executeQuery} and the
+ * REST API to a local file, one json object per line, and replays the most
+ * frequent ones when the node starts. the first searches after a restart then
+ * find warm filter caches, field data and page cache.
+ *
+ * the log holds the queries and REST search bodies in plain text, including
+ * any personal data they search for. entries still in the write buffer are
+ * lost if the application is killed.
+ *
+ * disabled by default, configure it in application.conf :
+ *
+ * <pre>
+ * # fraction of queries that are written to the log
+ * elasticsearch.querylog=0.01
+ * elasticsearch.querylog.file=tmp/elasticsearch-queries.log
+ * # the log is rolled over to .1 once it reaches this size
+ * elasticsearch.querylog.size=10mb
+ * # replay the most frequent queries at startup, one every 50ms
+ * elasticsearch.warmup.queries=100
+ * elasticsearch.warmup.delay=50ms
+ * </pre>
+ */
+public class QueryLog {
+
+	private static final double sampleRate = Config.getDouble(
+			"elasticsearch.querylog", 0);
+	private static final long maxBytes = Config.getBytes(
+			"elasticsearch.querylog.size", "10mb");
+	private static final int warmupQueries = Config.getInt(
+			"elasticsearch.warmup.queries", 0);
+	private static final long warmupDelayMillis = Config.getMillis(
+			"elasticsearch.warmup.delay", "50ms");
+
+	private static OutputStream out;
+	private static long written;
+
+	public static boolean isEnabled() {
+		return sampleRate > 0;
+	}
+
+	/**
+	 * records a query of {@link ElasticSearch#executeQuery}, if sampled
+	 */
+	static void sample(String index, QueryBuilder query) {
+		if (!sampled())
+			return;
+		Map<String, Object> entry = new LinkedHashMap<String, Object>();
+		entry.put("index", index);
+		entry.put("query", query.toString());
+		write(entry);
+	}
+
+	/**
+	 * records the body of a search received by the REST API, if sampled
+	 *
+	 * @param path
+	 *            - such as /comments/comment/_search
+	 */
+	public static void sample(String path, String source) {
+		if (StringUtils.isBlank(source) || !sampled())
+			return;
+		String[] segments = StringUtils.split(path, '/');
+		Map<String, Object> entry = new LinkedHashMap<String, Object>();
+		if (segments.length > 1 && !segments[0].startsWith("_"))
+			entry.put("index", segments[0]);
+		if (segments.length > 2 && !segments[1].startsWith("_"))
+			entry.put("types", segments[1]);
+		entry.put("source", source);
+		write(entry);
+	}
+
+	private static boolean sampled() {
+		return sampleRate > 0 && Math.random() < sampleRate;
+	}
+
+	/**
+	 * lines are buffered and reach the file in blocks, or when the log is
+	 * closed, so a sampled request does not wait for a write to disk
+	 */
+	private static synchronized void write(Map<String, Object> entry) {
+		try {
+			if (out == null || written >= maxBytes)
+				open();
+			byte[] line = ElasticSearch.getMapper().writeValueAsBytes(entry);
+			out.write(line);
+			out.write('\n');
+			written += line.length + 1;
+		} catch (IOException e) {
+			Logger.warn("Could not write query log : " + e.getMessage());
+		}
+	}
+
+	private static void open() throws IOException {
+		File file = getFile();
+		close();
+		if (file.length() >= maxBytes) {
+			File previous = new File(file.getPath() + ".1");
+			previous.delete();
+			file.renameTo(previous);
+		}
+		file.getParentFile().mkdirs();
+		out = new BufferedOutputStream(new FileOutputStream(file, true));
+		written = file.length();
+	}
+
+	public static synchronized void close() {
+		if (out == null)
+			return;
+		try {
+			out.close();
+		} catch (IOException e) {
+			Logger.warn("Could not close query log : " + e.getMessage());
+		}
+		out = null;
+	}
+
+	private static File getFile() {
+		String path = Config.get("elasticsearch.querylog.file",
+				"tmp/elasticsearch-queries.log");
+		return Play.applicationPath != null ? Play.getFile(path) : new File(
+				path).getAbsoluteFile();
+	}
+
+	/**
+	 * runs the elasticsearch.warmup.queries most frequent logged queries, one
+	 * at a time with elasticsearch.warmup.delay between them. failures are
+	 * logged and skipped.
+	 *
+	 * @return the number of queries replayed
+	 */
+	public static int replay(Client client) {
+		if (warmupQueries <= 0)
+			return 0;
+
+		List<Map<String, Object>> queries = mostFrequent(warmupQueries);
+		int replayed = 0;
+		for (Map<String, Object> entry : queries) {
+			try {
+				replay(client, entry);
+				replayed++;
+				if (warmupDelayMillis > 0)
+					Thread.sleep(warmupDelayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (Exception e) {
+				Logger.warn("Warm up query failed : " + e.getMessage());
+			}
+		}
+		return replayed;
+	}
+
+	private static void replay(Client client, Map<String, Object> entry) {
+		String index = (String) entry.get("index");
+		SearchRequestBuilder search = index == null ? client.prepareSearch()
+				: client.prepareSearch(StringUtils.split(index, ','));
+		String types = (String) entry.get("types");
+		if (types != null)
+			search.setTypes(StringUtils.split(types, ','));
+		if (entry.get("query") != null)
+			search.setQuery((String) entry.get("query"));
+		else
+			search.setSource((String) entry.get("source"));
+		search.execute().actionGet();
+	}
+
+	/**
+	 * @return the n entries of the current and previous log that occur most
+	 *         often
+	 */
+	static List<Map<String, Object>> mostFrequent(int n) {
+		final Map<String, Integer> counts = new HashMap<String, Integer>();
+		Map<String, Map<String, Object>> entries = new HashMap<String, Map<String, Object>>();
+		File file = getFile();
+		for (File log : new File[] { new File(file.getPath() + ".1"), file }) {
+			if (!log.exists())
+				continue;
+			try {
+				JsonLinesIterator lines = new JsonLinesIterator(log);
+				try {
+					while (lines.hasNext()) {
+						Map<String, Object> entry = lines.next();
+						String key = entry.toString();
+						Integer count = counts.get(key);
+						counts.put(key, count == null ? 1 : count + 1);
+						entries.put(key, entry);
+					}
+				} finally {
+					lines.close();
+				}
+			} catch (Exception e) {
+				Logger.warn("Could not read query log " + log + " : "
+						+ e.getMessage());
+			}
+		}
+
+		List<String> keys = new ArrayList<String>(counts.keySet());
+		Collections.sort(keys, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return counts.get(b) - counts.get(a);
+			}
+		});
+		List<Map<String, Object>> frequent = new ArrayList<Map<String, Object>>();
+		for (String key : keys.subList(0, Math.min(n, keys.size())))
+			frequent.add(entries.get(key));
+		return frequent;
+	}
+
+}
@@ -0,0 +1,147 @@
+package models.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import play.Logger;
+import play.jobs.Job;
+
+/**
+ * tracks the startup of the embedded node. with elasticsearch.startup.async
+ * the node starts in the background and the facade waits for it here, for at
+ * most elasticsearch.startup.timeout (default 30s).
+ *
+ * before {@link #starting()} is called, no node is being started and nothing
+ * waits.
+ */
+public class Readiness {
+
+	private static final long timeoutMillis = Config.getMillis(
+			"elasticsearch.startup.timeout", "30s");
+
+	private static final CountDownLatch latch = new CountDownLatch(1);
+	private static final AtomicBoolean firstRequest = new AtomicBoolean();
+	private static final List<Job<?>> pending = new ArrayList<Job<?>>();
+
+	private static volatile boolean starting;
+	private static volatile boolean ready;
+	private static volatile Throwable failure;
+	private static volatile long startTime;
+	private static volatile long readyTime;
+
+	public static void starting() {
+		startTime = System.currentTimeMillis();
+		starting = true;
+	}
+
+	public static void ready() {
+		readyTime = System.currentTimeMillis();
+		ready = true;
+		latch.countDown();
+		for (Job<?> job : drain())
+			job.now();
+	}
+
+	public static void failed(Throwable e) {
+		failure = e;
+		latch.countDown();
+		List<Job<?>> jobs = drain();
+		if (!jobs.isEmpty())
+			Logger.warn("Not running " + jobs.size()
+					+ " jobs, elastic search failed to start");
+	}
+
+	/**
+	 * runs the job once the node has started, without blocking the caller.
+	 * use it for setup such as mappings from a start job when
+	 * elasticsearch.startup.async is on. the job runs straight away if the
+	 * node is ready or is not being started, and is dropped if the node
+	 * failed to start.
+	 */
+	public static void whenReady(Job<?> job) {
+		synchronized (pending) {
+			if (starting && !ready && failure == null) {
+				pending.add(job);
+				return;
+			}
+		}
+		if (failure != null) {
+			Logger.warn("Not running " + job.getClass().getName()
+					+ ", elastic search failed to start");
+			return;
+		}
+		job.now();
+	}
+
+	private static List<Job<?>> drain() {
+		synchronized (pending) {
+			List<Job<?>> jobs = new ArrayList<Job<?>>(pending);
+			pending.clear();
+			return jobs;
+		}
+	}
+
+	/**
+	 * @return whether the node is being started or was started
+	 */
+	public static boolean isStarting() {
+		return starting;
+	}
+
+	/**
+	 * @return why the node failed to start, or null if it did not fail
+	 */
+	public static Throwable getFailure() {
+		return failure;
+	}
+
+	public static boolean isReady() {
+		return ready || !starting;
+	}
+
+	/**
+	 * waits for the node to start, up to elasticsearch.startup.timeout
+	 *
+	 * @throws IllegalStateException
+	 *             if the node failed to start or did not start in time
+	 */
+	public static void await() {
+		if (isReady()) {
+			requested();
+			return;
+		}
+		try {
+			if (!latch.await(timeoutMillis, TimeUnit.MILLISECONDS))
+				throw new IllegalStateException(
+						"elastic search did not start within " + timeoutMillis
+								+ "ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+					"interrupted while waiting for elastic search to start");
+		}
+		if (failure != null)
+			throw new IllegalStateException("elastic search failed to start",
+					failure);
+		requested();
+	}
+
+	/**
+	 * logs the time from application start to the first request, once
+	 */
+	public static void requested() {
+		if (!starting || firstRequest.get()
+				|| !firstRequest.compareAndSet(false, true))
+			return;
+		long now = System.currentTimeMillis();
+		Logger.info("First elastic search request "
+				+ (now - startTime)
+				+ "ms after startup began"
+				+ (ready ? ", " + (now - readyTime) + "ms after the node was ready"
+						: " while the node was starting"));
+	}
+
+}
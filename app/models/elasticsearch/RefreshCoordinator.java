@@ -0,0 +1,120 @@
+package models.elasticsearch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.refresh.RefreshResponse;
+
+import play.Logger;
+import play.libs.F.Promise;
+
+/**
+ * merges the refreshes requested for an index within
+ * elasticsearch.refresh.window (default 50ms) into a single refresh. callers
+ * get a promise that is redeemed once a refresh that started after their
+ * request completed, so their writes are then visible to searches.
+ *
+ * this only saves refreshes for concurrent callers, or callers that do not
+ * wait for the promise. a single thread that deletes one document at a time
+ * and waits each time pays the window plus a full refresh per document.
+ * sequential purges should use {@link ElasticSearch#deleteAll},
+ * {@link ElasticSearch#deleteByQuery} or
+ * {@link ElasticSearch#delete(String, String, String, boolean)} without
+ * waiting.
+ */
+public class RefreshCoordinator {
+
+	private static final long windowMillis = Config.getMillis(
+			"elasticsearch.refresh.window", "50ms");
+
+	private static final Map<String, Promise<Boolean>> pending = new HashMap<String, Promise<Boolean>>();
+
+	private static ScheduledExecutorService scheduler;
+
+	/**
+	 * @return a promise redeemed with true after the index was refreshed, or
+	 *         false if the refresh failed
+	 */
+	public static Promise<Boolean> refresh(final String index) {
+		synchronized (pending) {
+			Promise<Boolean> promise = pending.get(index);
+			if (promise != null)
+				return promise;
+
+			promise = new Promise<Boolean>();
+			pending.put(index, promise);
+			getScheduler().schedule(new Runnable() {
+				public void run() {
+					execute(index);
+				}
+			}, windowMillis, TimeUnit.MILLISECONDS);
+			return promise;
+		}
+	}
+
+	/**
+	 * requests a refresh and waits for it
+	 *
+	 * @return false if the refresh failed
+	 */
+	public static boolean refreshAndWait(String index) {
+		try {
+			return refresh(index).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (Exception e) {
+			Logger.error(e, "Refresh of " + index + " failed");
+			return false;
+		}
+	}
+
+	private static void execute(final String index) {
+		// later requests wait for the next refresh, this one may already miss
+		// their writes
+		final Promise<Boolean> promise;
+		synchronized (pending) {
+			promise = pending.remove(index);
+		}
+		if (promise == null)
+			return;
+
+		try {
+			ElasticSearch.getClient().admin().indices().prepareRefresh(index)
+					.execute(new ActionListener<RefreshResponse>() {
+
+						public void onResponse(RefreshResponse response) {
+							promise.invoke(response.failedShards() == 0);
+						}
+
+						public void onFailure(Throwable e) {
+							Logger.error(e, "Refresh of " + index + " failed");
+							promise.invoke(false);
+						}
+					});
+		} catch (RuntimeException e) {
+			Logger.error(e, "Refresh of " + index + " failed");
+			promise.invoke(false);
+		}
+	}
+
+	private static synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler == null)
+			scheduler = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable,
+									"elasticsearch-refresh");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		return scheduler;
+	}
+
+}
@@ -0,0 +1,118 @@
+package models.elasticsearch;
+
+import org.apache.log4j.Logger;
+import org.elasticsearch.rest.RestRequest;
+
+/**
+ * timestamps of the phases of a call through the REST API : access check,
+ * building the {@link PlayRestRequest}, waiting for a slot in
+ * {@link AdmissionControl}, dispatching it, elastic search working on it
+ * until it hands over the response, and writing the response.
+ *
+ * calls slower than elasticsearch.rest.slowlog (default 1s, -1 to disable)
+ * are logged with their phases to the elasticsearch.slowlog log4j logger,
+ * which can be sent to its own file in log4j.properties :
+ *
+ * <pre>
+ * log4j.logger.elasticsearch.slowlog=WARN, slowlog
+ * log4j.additivity.elasticsearch.slowlog=false
+ * log4j.appender.slowlog=org.apache.log4j.DailyRollingFileAppender
+ * log4j.appender.slowlog.File=logs/elasticsearch-slow.log
+ * log4j.appender.slowlog.layout=org.apache.log4j.PatternLayout
+ * log4j.appender.slowlog.layout.ConversionPattern=%d %m%n
+ * </pre>
+ *
+ * with the default elasticsearch.rest.response=direct, play writes the
+ * response after the controller returns, and the write phase ends when play
+ * has read the whole response stream. with buffered responses it only covers
+ * the copy into play's output buffer.
+ *
+ * the phases of a sample of elasticsearch.rest.timing.sample (default 0.01)
+ * of the calls are also recorded in {@link Metrics}, as the operations
+ * "rest phase auth", "rest phase build" and so on.
+ */
+public class RestTimings {
+
+	private static final Logger slowLog = Logger
+			.getLogger("elasticsearch.slowlog");
+
+	private static final long slowNanos = Config.getMillis(
+			"elasticsearch.rest.slowlog", "1s") * 1000000L;
+
+	private static final double sampleRate = Config.getDouble(
+			"elasticsearch.rest.timing.sample", 0.01);
+
+	private final long start = System.nanoTime();
+	private long authorized;
+	private long built;
+	private long admitted;
+	private long dispatched;
+
+	public void authorized() {
+		authorized = System.nanoTime();
+	}
+
+	public void built() {
+		built = System.nanoTime();
+	}
+
+	/**
+	 * the call got a slot from {@link AdmissionControl}
+	 */
+	public void admitted() {
+		admitted = System.nanoTime();
+	}
+
+	public void dispatched() {
+		dispatched = System.nanoTime();
+	}
+
+	/**
+	 * logs the call if it was slow and records the phases if it is sampled.
+	 * called by {@link PlayRestChannel#time(RestTimings)} once the response
+	 * is written.
+	 */
+	void finished(PlayRestChannel channel) {
+		RestRequest request = channel.restRequest;
+		long written = channel.writtenNanos;
+		long took = written - start;
+		boolean slow = slowNanos >= 0 && took >= slowNanos;
+		boolean sampled = Metrics.isEnabled() && sampleRate > 0
+				&& Math.random() < sampleRate;
+		if (!slow && !sampled)
+			return;
+
+		long auth = authorized - start;
+		long build = built - authorized;
+		long queue = admitted - built;
+		long dispatch = dispatched - admitted;
+		// the response can be handed over before dispatchRequest returns
+		long es = channel.responseNanos - Math.min(dispatched,
+				channel.responseNanos);
+		long write = written - channel.responseNanos;
+
+		if (sampled) {
+			Metrics.record("rest phase auth", null, auth);
+			Metrics.record("rest phase build", null, build);
+			Metrics.record("rest phase queue", null, queue);
+			Metrics.record("rest phase dispatch", null, dispatch);
+			Metrics.record("rest phase es", null, es);
+			Metrics.record("rest phase write", null, write);
+		}
+
+		if (slow)
+			slowLog.warn("took[" + millis(took) + "] auth[" + millis(auth)
+					+ "] build[" + millis(build) + "] queue[" + millis(queue)
+					+ "] dispatch["
+					+ millis(dispatch) + "] es[" + millis(es) + "] write["
+					+ millis(write) + "] method[" + request.method() + "] path["
+					+ request.rawPath() + "] body[" + request.content().length()
+					+ "b] response[" + channel.responseLength
+					+ "b] opaque_id[" + request.header("X-Opaque-Id") + "]");
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.1fms", nanos / 1000000d);
+	}
+
+}
@@ -0,0 +1,15 @@
+package models.elasticsearch;
+
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * receives the hits of {@link ElasticSearch#scan}, one at a time
+ */
+public interface ScanHandler {
+
+	/**
+	 * @return false to stop the scan
+	 */
+	boolean onHit(SearchHit hit);
+
+}
@@ -0,0 +1,82 @@
+package models.elasticsearch;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * iterates over every hit of a query using a scan search and scrolling, one
+ * batch at a time. unlike from/size paging, each batch costs the same no
+ * matter how deep it is, and only the current batch is held in memory.
+ *
+ * hits are returned in no particular order. each request returns up to
+ * batchSize hits per shard. the scroll is kept alive on the node for
+ * elasticsearch.scan.keepalive (default 5m) between batches and simply
+ * expires if the iteration is abandoned.
+ */
+public class ScrollIterator implements Iterator<SearchHit> {
+
+	private final Client client;
+	private final TimeValue keepAlive;
+
+	private String scrollId;
+	private SearchHit[] hits = new SearchHit[0];
+	private int position;
+	private boolean finished;
+	private long total;
+
+	public ScrollIterator(Client client, String index, QueryBuilder query,
+			int batchSize) {
+		this.client = client;
+		this.keepAlive = TimeValue.timeValueMillis(Config.getMillis(
+				"elasticsearch.scan.keepalive", "5m"));
+
+		// a scan search returns no hits, only the scroll id and the total
+		SearchResponse response = client.prepareSearch(index)
+				.setSearchType(SearchType.SCAN).setQuery(query)
+				.setSize(batchSize).setScroll(keepAlive).execute().actionGet();
+		this.scrollId = response.scrollId();
+		this.total = response.hits().totalHits();
+		this.finished = total == 0;
+	}
+
+	/**
+	 * @return the number of hits the query matched
+	 */
+	public long getTotalHits() {
+		return total;
+	}
+
+	public boolean hasNext() {
+		if (position < hits.length)
+			return true;
+		if (finished)
+			return false;
+
+		SearchResponse response = client.prepareSearchScroll(scrollId)
+				.setScroll(keepAlive).execute().actionGet();
+		scrollId = response.scrollId();
+		hits = response.hits().hits();
+		position = 0;
+		if (hits.length == 0)
+			finished = true;
+		return hits.length > 0;
+	}
+
+	public SearchHit next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return hits[position++];
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+}
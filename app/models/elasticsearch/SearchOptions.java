@@ -0,0 +1,179 @@
+package models.elasticsearch;
+
+import org.apache.commons.lang.StringUtils;
+import org.elasticsearch.action.search.SearchOperationThreading;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.unit.TimeValue;
+
+import play.Logger;
+
+/**
+ * execution options of a search. options that are not set are left to
+ * elastic search, or to the defaults they are combined with.
+ *
+ * the global defaults are read from application.conf :
+ *
+ * <pre>
+ * elasticsearch.search.type=query_then_fetch
+ * elasticsearch.search.threading=single_thread
+ * elasticsearch.search.timeout=2s
+ * elasticsearch.search.preference=_local
+ * elasticsearch.search.routing=
+ * </pre>
+ *
+ * and can be overridden per call :
+ *
+ * <pre>
+ * new SearchOptions().searchType(SearchType.QUERY_THEN_FETCH).timeout(&quot;500ms&quot;)
+ * </pre>
+ */
+public class SearchOptions {
+
+	private static final SearchOptions defaults = fromConfiguration();
+
+	private SearchType searchType;
+	private SearchOperationThreading operationThreading;
+	private TimeValue timeout;
+	private String preference;
+	private String routing;
+
+	/**
+	 * @return a copy of the options set in application.conf, which the
+	 *         caller may change
+	 */
+	public static SearchOptions defaults() {
+		return defaults.withDefaults(new SearchOptions());
+	}
+
+	/**
+	 * reads the defaults. a value that cannot be parsed is logged and left
+	 * to elastic search, so a typo does not stop the module from loading.
+	 */
+	private static SearchOptions fromConfiguration() {
+		SearchOptions options = new SearchOptions();
+		String type = Config.get("elasticsearch.search.type", null);
+		if (type != null)
+			try {
+				options.searchType(SearchType.fromString(type.trim()));
+			} catch (RuntimeException e) {
+				Logger.warn("%s is not a search type : %s, ignoring it",
+						"elasticsearch.search.type", type);
+			}
+		String threading = Config.get("elasticsearch.search.threading", null);
+		if (threading != null)
+			try {
+				options.operationThreading(SearchOperationThreading
+						.fromString(threading.trim(), null));
+			} catch (RuntimeException e) {
+				Logger.warn("%s is not a threading model : %s, ignoring it",
+						"elasticsearch.search.threading", threading);
+			}
+		String timeout = Config.get("elasticsearch.search.timeout", null);
+		if (timeout != null)
+			try {
+				options.timeout(timeout.trim());
+			} catch (RuntimeException e) {
+				Logger.warn("%s is not a time : %s, ignoring it",
+						"elasticsearch.search.timeout", timeout);
+			}
+		options.preference(StringUtils.trimToNull(Config.get(
+				"elasticsearch.search.preference", null)));
+		options.routing(StringUtils.trimToNull(Config.get(
+				"elasticsearch.search.routing", null)));
+		return options;
+	}
+
+	public SearchOptions searchType(SearchType searchType) {
+		this.searchType = searchType;
+		return this;
+	}
+
+	public SearchOptions operationThreading(
+			SearchOperationThreading operationThreading) {
+		this.operationThreading = operationThreading;
+		return this;
+	}
+
+	public SearchOptions timeout(TimeValue timeout) {
+		this.timeout = timeout;
+		return this;
+	}
+
+	/**
+	 * @param timeout
+	 *            - such as "500ms" or "2s"
+	 */
+	public SearchOptions timeout(String timeout) {
+		return timeout(TimeValue.parseTimeValue(timeout, null));
+	}
+
+	public SearchOptions preference(String preference) {
+		this.preference = preference;
+		return this;
+	}
+
+	public SearchOptions routing(String routing) {
+		this.routing = routing;
+		return this;
+	}
+
+	public SearchType getSearchType() {
+		return searchType;
+	}
+
+	public SearchOperationThreading getOperationThreading() {
+		return operationThreading;
+	}
+
+	public TimeValue getTimeout() {
+		return timeout;
+	}
+
+	public String getPreference() {
+		return preference;
+	}
+
+	public String getRouting() {
+		return routing;
+	}
+
+	/**
+	 * @return a copy of these options, with the options that are not set
+	 *         taken from the fallback
+	 */
+	public SearchOptions withDefaults(SearchOptions fallback) {
+		SearchOptions options = new SearchOptions();
+		options.searchType = searchType != null ? searchType
+				: fallback.searchType;
+		options.operationThreading = operationThreading != null ? operationThreading
+				: fallback.operationThreading;
+		options.timeout = timeout != null ? timeout : fallback.timeout;
+		options.preference = preference != null ? preference
+				: fallback.preference;
+		options.routing = routing != null ? routing : fallback.routing;
+		return options;
+	}
+
+	public SearchRequestBuilder apply(SearchRequestBuilder search) {
+		if (searchType != null)
+			search.setSearchType(searchType);
+		if (operationThreading != null)
+			search.setOperationThreading(operationThreading);
+		if (timeout != null)
+			search.setTimeout(timeout);
+		if (preference != null)
+			search.setPreference(preference);
+		if (routing != null)
+			search.setRouting(routing);
+		return search;
+	}
+
+	@Override
+	public String toString() {
+		return "type=" + searchType + ",threading=" + operationThreading
+				+ ",timeout=" + timeout + ",preference=" + preference
+				+ ",routing=" + routing;
+	}
+
+}
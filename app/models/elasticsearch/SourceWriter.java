@@ -0,0 +1,114 @@
+package models.elasticsearch;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.codehaus.jackson.map.ObjectWriter;
+
+/**
+ * encodes records into the json source of an index request. each class gets
+ * an ObjectWriter that is resolved once and reused, and objects are written
+ * straight to bytes without converting them to a map or a String first.
+ */
+class SourceWriter {
+
+	private static final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
+	/**
+	 * how the id field of a class is read, NONE when it is not a plain field
+	 * or bean property and the record has to be converted to a map instead
+	 */
+	private static final ConcurrentMap<String, Object> idFields = new ConcurrentHashMap<String, Object>();
+	private static final Object NONE = new Object();
+
+	/**
+	 * @return the json source, including the fingerprint when fingerprinting
+	 *         is enabled
+	 */
+	static byte[] toSource(Object record) {
+		return toSource(record, Fingerprint.isEnabled() ? Fingerprint
+				.of(record) : null);
+	}
+
+	/**
+	 * a fingerprint left in a map read back from the index is replaced, not
+	 * written twice
+	 */
+	static byte[] toSource(Object record, String fingerprint) {
+		if (fingerprint == null)
+			return toBytes(record);
+		return Fingerprint.append(toBytes(Fingerprint.withoutField(record)),
+				fingerprint);
+	}
+
+	static byte[] toBytes(Object record) {
+		try {
+			return getWriter(record.getClass()).writeValueAsBytes(record);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("could not serialize "
+					+ record.getClass().getName(), e);
+		}
+	}
+
+	/**
+	 * reads the id from a map entry, a public field or a bean property of
+	 * the record. falls back to converting the record to a map, which also
+	 * finds properties renamed by jackson annotations.
+	 */
+	static String getId(String idField, Object record) {
+		if (idField == null)
+			return null;
+		if (record instanceof Map)
+			return ElasticSearch.getId(idField, (Map<String, Object>) record);
+
+		Class<?> clazz = record.getClass();
+		String key = clazz.getName() + "#" + idField;
+		Object field = idFields.get(key);
+		if (field == null) {
+			field = findField(clazz, idField);
+			idFields.put(key, field);
+		}
+
+		Object value;
+		try {
+			if (field != NONE)
+				value = ((Field) field).get(record);
+			else if (PropertyUtils.isReadable(record, idField))
+				value = PropertyUtils.getProperty(record, idField);
+			else
+				return ElasticSearch.getId(idField,
+						ElasticSearch.convertToMap(record));
+		} catch (Exception e) {
+			throw new IllegalArgumentException("could not read " + idField
+					+ " of " + clazz.getName(), e);
+		}
+		return value == null ? null : ElasticSearch.getMapper().convertValue(
+				value, String.class);
+	}
+
+	private static Object findField(Class<?> clazz, String name) {
+		try {
+			Field field = clazz.getField(name);
+			if (!Modifier.isStatic(field.getModifiers()))
+				return field;
+		} catch (NoSuchFieldException e) {
+			// not a public field
+		}
+		return NONE;
+	}
+
+	private static ObjectWriter getWriter(Class<?> clazz) {
+		ObjectWriter writer = writers.get(clazz);
+		if (writer == null) {
+			writer = ElasticSearch.getMapper().writerWithType(clazz);
+			writers.put(clazz, writer);
+		}
+		return writer;
+	}
+
+}
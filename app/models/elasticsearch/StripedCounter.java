@@ -0,0 +1,42 @@
+package models.elasticsearch;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a counter that is cheap to update from many threads at once. each thread
+ * adds to one of several cells, spread out so they do not share a cache line,
+ * and reading sums the cells.
+ */
+public class StripedCounter {
+
+	private static final int STRIPES = 16;
+
+	/**
+	 * longs between two cells, 8 longs are 64 bytes
+	 */
+	private static final int PADDING = 8;
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES
+			* PADDING);
+
+	public void increment() {
+		add(1);
+	}
+
+	public void add(long value) {
+		cells.addAndGet(cell(), value);
+	}
+
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++)
+			sum += cells.get(i * PADDING);
+		return sum;
+	}
+
+	private static int cell() {
+		return ((int) Thread.currentThread().getId() & (STRIPES - 1))
+				* PADDING;
+	}
+
+}
@@ -0,0 +1,253 @@
+package models.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.common.UUID;
+
+import play.Logger;
+
+/**
+ * write-behind buffer for {@link ElasticSearch#saveObject},
+ * {@link ElasticSearch#saveMap} and their async variants. documents are
+ * queued per index and written with bulk requests once
+ * elasticsearch.writebehind.actions documents or elasticsearch.writebehind.size
+ * bytes are queued, or when the oldest queued document is
+ * elasticsearch.writebehind.age old.
+ *
+ * at most elasticsearch.writebehind.capacity documents are queued or being
+ * written, after that saving blocks until a bulk request completes. ids are
+ * generated on the client so the save can return before the write.
+ *
+ * the cached queries and the cached document are invalidated when the
+ * document is queued and again when it is written. until it is written,
+ * reads return the previous version from elastic search.
+ *
+ * failures are logged, or passed to the handler set with
+ * {@link #setFailureHandler(WriteFailureHandler)}. the queue is drained when
+ * the application stops.
+ *
+ * disabled by default, configure it in application.conf :
+ *
+ * <pre>
+ * elasticsearch.writebehind=true
+ * elasticsearch.writebehind.actions=500
+ * elasticsearch.writebehind.size=5mb
+ * elasticsearch.writebehind.age=1s
+ * elasticsearch.writebehind.capacity=10000
+ * </pre>
+ */
+public class WriteBehind {
+
+	private static final boolean enabled = Config.getBoolean(
+			"elasticsearch.writebehind", false);
+	private static final int maxActions = Config.getInt(
+			"elasticsearch.writebehind.actions", 500);
+	private static final long maxBytes = Config.getBytes(
+			"elasticsearch.writebehind.size", "5mb");
+	private static final long maxAgeMillis = Config.getMillis(
+			"elasticsearch.writebehind.age", "1s");
+	private static final int capacity = Config.getInt(
+			"elasticsearch.writebehind.capacity", 10000);
+
+	private static final Semaphore permits = new Semaphore(capacity);
+	private static final ConcurrentMap<String, Buffer> buffers = new ConcurrentHashMap<String, Buffer>();
+
+	private static volatile WriteFailureHandler failureHandler = new WriteFailureHandler() {
+		public void onFailure(String index, String type, String id,
+				String message) {
+			Logger.error("Write behind of " + index + "/" + type + "/" + id
+					+ " failed : " + message);
+		}
+	};
+
+	private static ScheduledExecutorService scheduler;
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setFailureHandler(WriteFailureHandler handler) {
+		failureHandler = handler;
+	}
+
+	/**
+	 * queues the document, blocking while the buffer is full
+	 *
+	 * @return the id of the document, generated if none was given
+	 */
+	static String add(String index, String type, String id, byte[] source) {
+		if (id == null || id.trim().length() == 0)
+			id = UUID.randomBase64UUID();
+		IndexRequestBuilder request = ElasticSearch.getClient()
+				.prepareIndex(index, type, id).setSource(source);
+
+		permits.acquireUninterruptibly();
+		startScheduler();
+		Buffer buffer = buffers.get(index);
+		if (buffer == null) {
+			buffers.putIfAbsent(index, new Buffer(index));
+			buffer = buffers.get(index);
+		}
+		buffer.add(request, type, id, source.length);
+		// no cache may keep serving the previous version while this one is
+		// queued, the index is invalidated again once it is written
+		ElasticSearch.written(index, type, id);
+		return id;
+	}
+
+	/**
+	 * sends every queued document without waiting for the writes
+	 */
+	public static void flush() {
+		for (Buffer buffer : buffers.values())
+			buffer.flush();
+	}
+
+	/**
+	 * sends every queued document and waits until all writes completed or
+	 * the timeout expired
+	 *
+	 * @return true if every write completed
+	 */
+	public static boolean drain(long timeout, TimeUnit unit) {
+		synchronized (WriteBehind.class) {
+			if (scheduler != null) {
+				scheduler.shutdown();
+				scheduler = null;
+			}
+		}
+		flush();
+		try {
+			if (!permits.tryAcquire(capacity, timeout, unit))
+				return false;
+			permits.release(capacity);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * @return the number of documents queued or being written
+	 */
+	public static int pending() {
+		return capacity - permits.availablePermits();
+	}
+
+	private static synchronized void startScheduler() {
+		if (scheduler != null)
+			return;
+		scheduler = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"elasticsearch-write-behind");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		long period = Math.max(1, maxAgeMillis / 2);
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				long now = System.currentTimeMillis();
+				for (Buffer buffer : buffers.values())
+					buffer.flushOlderThan(now - maxAgeMillis);
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	private static class Buffer {
+
+		private final String index;
+
+		private BulkRequestBuilder bulk;
+		private List<String[]> documents;
+		private long bytes;
+		private long oldest;
+
+		Buffer(String index) {
+			this.index = index;
+		}
+
+		synchronized void add(IndexRequestBuilder request, String type,
+				String id, long sizeInBytes) {
+			if (bulk == null) {
+				bulk = ElasticSearch.getClient().prepareBulk();
+				documents = new ArrayList<String[]>();
+				bytes = 0;
+				oldest = System.currentTimeMillis();
+			}
+			bulk.add(request);
+			documents.add(new String[] { type, id });
+			bytes += sizeInBytes;
+			if (bulk.numberOfActions() >= maxActions || bytes >= maxBytes)
+				flush();
+		}
+
+		synchronized void flushOlderThan(long time) {
+			if (bulk != null && oldest <= time)
+				flush();
+		}
+
+		synchronized void flush() {
+			if (bulk == null)
+				return;
+			final BulkRequestBuilder request = bulk;
+			final List<String[]> sent = documents;
+			bulk = null;
+			documents = null;
+
+			try {
+				request.execute(new ActionListener<BulkResponse>() {
+
+					public void onResponse(BulkResponse response) {
+						for (BulkItemResponse item : response.items())
+							if (item.failed())
+								failed(item.type(), item.id(),
+										item.failureMessage());
+						completed(sent.size());
+					}
+
+					public void onFailure(Throwable e) {
+						for (String[] document : sent)
+							failed(document[0], document[1], e.getMessage());
+						completed(sent.size());
+					}
+				});
+			} catch (RuntimeException e) {
+				for (String[] document : sent)
+					failed(document[0], document[1], e.getMessage());
+				completed(sent.size());
+			}
+		}
+
+		private void failed(String type, String id, String message) {
+			try {
+				failureHandler.onFailure(index, type, id, message);
+			} catch (RuntimeException e) {
+				Logger.error(e, "Write failure handler failed");
+			}
+		}
+
+		private void completed(int documents) {
+			ElasticSearch.written(index);
+			permits.release(documents);
+		}
+
+	}
+
+}
@@ -0,0 +1,11 @@
+package models.elasticsearch;
+
+/**
+ * notified when a document queued by {@link WriteBehind} could not be
+ * written
+ */
+public interface WriteFailureHandler {
+
+	void onFailure(String index, String type, String id, String message);
+
+}
@@ -0,0 +1,71 @@
+package benchmarks.elasticsearch;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import models.elasticsearch.BulkResult;
+import models.elasticsearch.ElasticSearch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * imports the same 10000 records into an empty index with different bulk
+ * request sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BulkImportBenchmark {
+
+	private static final String INDEX = "bench-import";
+
+	@Param({ "100", "1000", "5000" })
+	public int batchSize;
+
+	@Param({ "10000" })
+	public int records;
+
+	private List<Dataset.Record> dataset;
+
+	@Setup(Level.Trial)
+	public void startNode() {
+		LocalNode.start();
+		LocalNode.configure("elasticsearch.bulk.actions", batchSize);
+		dataset = Dataset.records(records);
+	}
+
+	@Setup(Level.Iteration)
+	public void emptyIndex() {
+		LocalNode.resetIndex(INDEX);
+	}
+
+	@TearDown(Level.Trial)
+	public void stopNode() {
+		LocalNode.stop();
+	}
+
+	@Benchmark
+	public BulkResult bulkImport() {
+		BulkResult result = ElasticSearch.bulkImport(INDEX, "record", "id",
+				dataset);
+		if (result.hasFailures())
+			throw new IllegalStateException(result.buildFailureMessage());
+		return result;
+	}
+
+}
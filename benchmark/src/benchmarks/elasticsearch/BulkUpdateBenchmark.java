@@ -0,0 +1,79 @@
+package benchmarks.elasticsearch;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import models.elasticsearch.BulkUpdateResult;
+import models.elasticsearch.ElasticSearch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * updates an index of 10000 records with the same records, of which 0%, 10%
+ * or 100% have changed since the last update
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BulkUpdateBenchmark {
+
+	private static final String INDEX = "bench-update";
+
+	@Param({ "0", "10", "100" })
+	public int changedPercent;
+
+	@Param({ "10000" })
+	public int records;
+
+	private List<Dataset.Record> dataset;
+	private int version;
+
+	@Setup(Level.Trial)
+	public void loadIndex() {
+		LocalNode.start();
+		LocalNode.resetIndex(INDEX);
+		dataset = Dataset.records(records);
+		ElasticSearch.bulkImport(INDEX, "record", "id", dataset);
+		LocalNode.refresh(INDEX);
+	}
+
+	/**
+	 * changes the score of every n-th record, so that a changed record is
+	 * different from what the previous iteration wrote
+	 */
+	@Setup(Level.Iteration)
+	public void changeRecords() {
+		version++;
+		if (changedPercent == 0)
+			return;
+		int step = 100 / changedPercent;
+		for (int i = 0; i < dataset.size(); i += step)
+			dataset.get(i).score = version;
+	}
+
+	@TearDown(Level.Trial)
+	public void stopNode() {
+		LocalNode.stop();
+	}
+
+	@Benchmark
+	public BulkUpdateResult bulkUpdate() {
+		return ElasticSearch.bulkUpdateDetailed(INDEX, "record", "id", dataset);
+	}
+
+}
@@ -0,0 +1,68 @@
+package benchmarks.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * generates the same records for the same seed, so every run of a benchmark
+ * indexes and queries identical data
+ */
+public class Dataset {
+
+	public static final long SEED = 42;
+
+	private static final String[] WORDS = { "elastic", "search", "play",
+			"framework", "module", "index", "query", "shard", "node",
+			"cluster", "document", "field", "mapping", "bulk", "update",
+			"cache", "refresh", "segment", "lucene", "term", "filter",
+			"facet", "score", "replica", "gateway", "river", "analyzer",
+			"token", "prefix", "scroll" };
+
+	public static class Record {
+		public String id;
+		public String title;
+		public String body;
+		public String[] tags;
+		public int score;
+		public long created;
+	}
+
+	public static List<Record> records(int count) {
+		return records(count, SEED);
+	}
+
+	public static List<Record> records(int count, long seed) {
+		Random random = new Random(seed);
+		List<Record> records = new ArrayList<Record>(count);
+		for (int i = 0; i < count; i++) {
+			Record record = new Record();
+			record.id = "record-" + i;
+			record.title = words(random, 4);
+			record.body = words(random, 60);
+			record.tags = new String[] { word(random), word(random) };
+			record.score = random.nextInt(1000);
+			record.created = 1350000000000L + random.nextInt(1000000000);
+			records.add(record);
+		}
+		return records;
+	}
+
+	/**
+	 * @return a word of the vocabulary chosen by the random source
+	 */
+	public static String word(Random random) {
+		return WORDS[random.nextInt(WORDS.length)];
+	}
+
+	private static String words(Random random, int count) {
+		StringBuilder words = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				words.append(' ');
+			words.append(word(random));
+		}
+		return words.toString();
+	}
+
+}
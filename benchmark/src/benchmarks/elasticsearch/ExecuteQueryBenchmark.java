@@ -0,0 +1,80 @@
+package benchmarks.elasticsearch;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import models.elasticsearch.ElasticSearch;
+import models.elasticsearch.SearchOptions;
+
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * runs term queries for seeded random words with each search type
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ExecuteQueryBenchmark {
+
+	private static final String INDEX = "bench-query";
+
+	@Param({ "query_then_fetch", "dfs_query_then_fetch", "query_and_fetch",
+			"dfs_query_and_fetch" })
+	public String searchType;
+
+	@Param({ "10000" })
+	public int records;
+
+	private SearchOptions options;
+	private QueryBuilder[] queries;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void loadIndex() {
+		LocalNode.start();
+		LocalNode.resetIndex(INDEX);
+		ElasticSearch.bulkImport(INDEX, "record", "id",
+				Dataset.records(records));
+		LocalNode.refresh(INDEX);
+
+		options = new SearchOptions().searchType(SearchType
+				.fromString(searchType));
+		Random random = new Random(Dataset.SEED);
+		queries = new QueryBuilder[256];
+		for (int i = 0; i < queries.length; i++)
+			queries[i] = QueryBuilders.termQuery("body",
+					Dataset.word(random));
+	}
+
+	@TearDown(Level.Trial)
+	public void stopNode() {
+		LocalNode.stop();
+	}
+
+	@Benchmark
+	public List<Dataset.Record> executeQuery() {
+		QueryBuilder query = queries[next++ & (queries.length - 1)];
+		return ElasticSearch.executeQuery(INDEX, query, 0, 20, false,
+				Dataset.Record.class, options);
+	}
+
+}
@@ -0,0 +1,67 @@
+package benchmarks.elasticsearch;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import models.elasticsearch.ElasticSearch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * reads records by id, in a seeded random order
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GetObjectBenchmark {
+
+	private static final String INDEX = "bench-get";
+
+	@Param({ "10000" })
+	public int records;
+
+	private String[] ids;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void loadIndex() {
+		LocalNode.start();
+		LocalNode.resetIndex(INDEX);
+		ElasticSearch.bulkImport(INDEX, "record", "id",
+				Dataset.records(records));
+		LocalNode.refresh(INDEX);
+
+		Random random = new Random(Dataset.SEED);
+		ids = new String[4096];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = "record-" + random.nextInt(records);
+	}
+
+	@TearDown(Level.Trial)
+	public void stopNode() {
+		LocalNode.stop();
+	}
+
+	@Benchmark
+	public Dataset.Record getObject() {
+		String id = ids[next++ & (ids.length - 1)];
+		return ElasticSearch.getObject(INDEX, "record", id,
+				Dataset.Record.class);
+	}
+
+}
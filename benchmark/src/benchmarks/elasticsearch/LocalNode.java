@@ -0,0 +1,95 @@
+package benchmarks.elasticsearch;
+
+import java.io.File;
+import java.util.Properties;
+
+import models.elasticsearch.ElasticSearch;
+
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.node.NodeBuilder;
+import org.elasticsearch.node.internal.InternalNode;
+import org.elasticsearch.rest.RestController;
+
+import play.Play;
+
+/**
+ * starts a node.local instance in the benchmark JVM and wires it into the
+ * facade, the way jobs.elasticsearch.Start does. each run starts from an
+ * empty data directory with one shard and no replicas, so results do not
+ * depend on what an earlier run left behind.
+ */
+public class LocalNode {
+
+	private static File dataDirectory;
+
+	public static synchronized void start() {
+		if (ElasticSearch.node != null)
+			return;
+		if (Play.configuration == null)
+			Play.configuration = new Properties();
+
+		dataDirectory = new File(System.getProperty("java.io.tmpdir"),
+				"elastic-play-benchmark-" + System.nanoTime());
+		ImmutableSettings.Builder settings = ImmutableSettings
+				.settingsBuilder().put("node.local", true)
+				.put("http.enabled", false)
+				.put("path.data", dataDirectory.getAbsolutePath())
+				.put("index.number_of_shards", 1)
+				.put("index.number_of_replicas", 0);
+
+		ElasticSearch.node = NodeBuilder.nodeBuilder().settings(settings)
+				.node();
+		ElasticSearch.restController = ((InternalNode) ElasticSearch.node)
+				.injector().getInstance(RestController.class);
+		ElasticSearch.client = ElasticSearch.node.client();
+		ElasticSearch.client.admin().cluster().prepareHealth()
+				.setWaitForYellowStatus().execute().actionGet();
+	}
+
+	public static synchronized void stop() {
+		if (ElasticSearch.node == null)
+			return;
+		ElasticSearch.node.close();
+		ElasticSearch.node = null;
+		ElasticSearch.client = null;
+		ElasticSearch.restController = null;
+		delete(dataDirectory);
+	}
+
+	/**
+	 * drops and recreates the index, waiting until it can take requests
+	 */
+	public static void resetIndex(String index) {
+		if (ElasticSearch.client.admin().indices().prepareExists(index)
+				.execute().actionGet().exists())
+			ElasticSearch.client.admin().indices().prepareDelete(index)
+					.execute().actionGet();
+		ElasticSearch.client.admin().indices().prepareCreate(index).execute()
+				.actionGet();
+		ElasticSearch.client.admin().cluster().prepareHealth(index)
+				.setWaitForYellowStatus().execute().actionGet();
+	}
+
+	public static void refresh(String index) {
+		ElasticSearch.client.admin().indices().prepareRefresh(index)
+				.execute().actionGet();
+	}
+
+	/**
+	 * sets a module setting, as if it was in application.conf
+	 */
+	public static void configure(String key, Object value) {
+		Play.configuration.setProperty(key, String.valueOf(value));
+	}
+
+	private static void delete(File file) {
+		if (file == null || !file.exists())
+			return;
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				delete(child);
+		file.delete();
+	}
+
+}
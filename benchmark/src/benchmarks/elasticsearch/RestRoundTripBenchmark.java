@@ -0,0 +1,118 @@
+package benchmarks.elasticsearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import models.elasticsearch.ElasticSearch;
+import models.elasticsearch.PlayRestChannel;
+import models.elasticsearch.PlayRestRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import play.mvc.Http;
+
+/**
+ * sends a search through the REST proxy the way RestAPI does :
+ * PlayRestRequest, dispatchRequest, then waits for PlayRestChannel to hand
+ * over the response. the body is then read the way play sends it, from
+ * response.direct in direct mode or as a copy of response.out in buffered
+ * mode. both modes are measured up to the bytes that would go to the
+ * connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RestRoundTripBenchmark {
+
+	private static final String INDEX = "bench-rest";
+
+	private static final byte[] SEARCH = "{\"query\":{\"term\":{\"body\":\"lucene\"}},\"size\":20}"
+			.getBytes();
+
+	@Param({ "1000" })
+	public int records;
+
+	/**
+	 * elasticsearch.rest.response, read once when PlayRestChannel is loaded,
+	 * so each mode runs in its own fork
+	 */
+	@Param({ "direct", "buffered" })
+	public String mode;
+
+	/**
+	 * stands in for the connection buffer play copies the stream into
+	 */
+	private final byte[] scratch = new byte[8192];
+
+	@Setup(Level.Trial)
+	public void loadIndex() {
+		LocalNode.start();
+		LocalNode.configure("elasticsearch.rest.response", mode);
+		LocalNode.resetIndex(INDEX);
+		ElasticSearch.bulkImport(INDEX, "record", "id",
+				Dataset.records(records));
+		LocalNode.refresh(INDEX);
+	}
+
+	@TearDown(Level.Trial)
+	public void stopNode() {
+		LocalNode.stop();
+	}
+
+	@Benchmark
+	public long search() throws Exception {
+		Http.Request request = new Http.Request();
+		request.method = "POST";
+		request.path = "/es/" + INDEX + "/_search";
+		request.url = request.path;
+		request.querystring = "";
+		request.body = new ByteArrayInputStream(SEARCH);
+		Http.Response response = new Http.Response();
+		response.out = new ByteArrayOutputStream();
+
+		PlayRestRequest restRequest = new PlayRestRequest(request, INDEX
+				+ "/_search", null);
+		PlayRestChannel restChannel = new PlayRestChannel(restRequest,
+				response);
+		ElasticSearch.restController.dispatchRequest(restRequest,
+				restChannel);
+		restChannel.completed.get();
+		if (restChannel.sendFailure != null)
+			throw restChannel.sendFailure;
+		return write(response);
+	}
+
+	/**
+	 * @return the bytes play would write to the connection
+	 */
+	private long write(Http.Response response) throws Exception {
+		if (response.direct instanceof InputStream) {
+			InputStream in = (InputStream) response.direct;
+			long length = 0;
+			int read;
+			while ((read = in.read(scratch)) != -1)
+				length += read;
+			in.close();
+			return length;
+		}
+		return response.out.toByteArray().length;
+	}
+
+}
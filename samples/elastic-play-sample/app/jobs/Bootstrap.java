@@ -0,0 +1,28 @@
+package jobs;
+
+import jobs.elasticsearch.Start;
+import models.Comment;
+import models.elasticsearch.Readiness;
+import play.jobs.Job;
+import play.jobs.OnApplicationStart;
+
+/**
+ * maps the comments for autocomplete once the node has started
+ */
+@OnApplicationStart
+public class Bootstrap extends Job {
+
+	@Override
+	public void doJob() {
+		// this job may run before the module's, the node is only started once
+		new Start().doJob();
+		// with elasticsearch.startup.async the node is still starting here
+		Readiness.whenReady(new Job() {
+			@Override
+			public void doJob() {
+				Comment.enableAutocomplete();
+			}
+		});
+	}
+
+}
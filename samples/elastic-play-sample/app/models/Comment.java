@@ -1,5 +1,6 @@
 package models;
 
+import models.elasticsearch.Autocomplete;
 import models.elasticsearch.ElasticSearch;
 
 import org.elasticsearch.action.search.SearchResponse;
@@ -13,6 +14,15 @@ public class Comment {
 	public String author;
 	public String content;
 
+	/**
+	 * index the prefixes of author and content, called once at startup by
+	 * {@link jobs.Bootstrap}
+	 */
+	public static void enableAutocomplete() {
+		ElasticSearch.enableAutocomplete("comments", "comment", "author",
+				"content");
+	}
+
 	public static SearchHits findAll(int from) {
 		QueryBuilder query;
 		query = QueryBuilders.matchAllQuery();
@@ -24,7 +34,9 @@ public class Comment {
 	}
 
 	public static SearchHits search(String term, int from) {
-		QueryBuilder query = QueryBuilders.wildcardQuery("_all", term.toLowerCase());
+		QueryBuilder query = QueryBuilders.boolQuery()
+				.should(Autocomplete.query("author", term))
+				.should(Autocomplete.query("content", term));
 		SearchResponse searchResponse = ElasticSearch.getClient()
 				.prepareSearch("comments").setQuery(query).setFrom(from)
 				.execute().actionGet();
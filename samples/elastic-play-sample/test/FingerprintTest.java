@@ -0,0 +1,54 @@
+import java.util.HashMap;
+import java.util.Map;
+
+import models.elasticsearch.ElasticSearch;
+import models.elasticsearch.Fingerprint;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.test.UnitTest;
+
+public class FingerprintTest extends UnitTest {
+
+    private static final String INDEX = "fingerprint-test";
+    private static final String TYPE = "record";
+
+    private boolean enabled;
+
+    @Before
+    public void enable() {
+        enabled = Fingerprint.isEnabled();
+        Fingerprint.setEnabled(true);
+    }
+
+    @After
+    public void restore() {
+        Fingerprint.setEnabled(enabled);
+    }
+
+    /**
+     * a map read back with getById already holds a fingerprint, saving it
+     * again must replace it instead of writing the key twice
+     */
+    @Test
+    public void roundTripSaveKeepsOneFingerprint() {
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("name", "first");
+        String id = ElasticSearch.saveMap(INDEX, TYPE, null, data);
+
+        Map<String, Object> read = ElasticSearch.getById(INDEX, TYPE, id);
+        assertNotNull(read.get(Fingerprint.FIELD));
+        read.put("name", "second");
+        ElasticSearch.saveMap(INDEX, TYPE, id, read);
+
+        String source = ElasticSearch.getClient().prepareGet(INDEX, TYPE, id)
+                .execute().actionGet().sourceAsString();
+        assertEquals(source.indexOf(Fingerprint.FIELD),
+                source.lastIndexOf(Fingerprint.FIELD));
+        assertEquals(Fingerprint.of(read),
+                ElasticSearch.getById(INDEX, TYPE, id).get(Fingerprint.FIELD));
+    }
+
+}
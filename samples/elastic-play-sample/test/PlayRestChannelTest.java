@@ -0,0 +1,102 @@
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import models.elasticsearch.PlayRestChannel;
+import models.elasticsearch.PlayRestRequest;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.rest.XContentRestResponse;
+import org.elasticsearch.rest.action.support.RestXContentBuilder;
+import org.junit.Test;
+
+import play.libs.IO;
+import play.mvc.Http.Response;
+import play.test.FunctionalTest;
+import play.test.UnitTest;
+
+public class PlayRestChannelTest extends UnitTest {
+
+    private static final int THREADS = 4;
+    private static final int RESPONSES = 200;
+
+    /**
+     * elastic search builds responses in a thread local buffer and reuses
+     * it for the next response. play writes a response after the channel
+     * handed it over, so every body must still be intact once all buffers
+     * were reused.
+     */
+    @Test
+    public void responsesSurviveReusedBuffers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<List<Response>>> sent = new ArrayList<Future<List<Response>>>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                sent.add(executor.submit(new Callable<List<Response>>() {
+                    public List<Response> call() throws Exception {
+                        List<Response> responses = new ArrayList<Response>();
+                        for (int i = 0; i < RESPONSES; i++)
+                            responses.add(send(thread, i));
+                        return responses;
+                    }
+                }));
+            }
+
+            for (int t = 0; t < THREADS; t++) {
+                List<Response> responses = sent.get(t).get();
+                for (int i = 0; i < RESPONSES; i++)
+                    assertEquals(expected(t, i), body(responses.get(i)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Response send(int thread, int n) throws Exception {
+        PlayRestRequest request = new PlayRestRequest(
+                FunctionalTest.newRequest(), "/_test", null);
+        Response response = FunctionalTest.newResponse();
+        PlayRestChannel channel = new PlayRestChannel(request, response);
+        XContentBuilder builder = RestXContentBuilder
+                .restContentBuilder(request).startObject()
+                .field("thread", thread).field("n", n)
+                .field("padding", padding(n)).endObject();
+        channel.sendResponse(new XContentRestResponse(request,
+                RestStatus.OK, builder));
+        assertNull(channel.sendFailure);
+        return response;
+    }
+
+    private static String expected(int thread, int n) {
+        return "{\"thread\":" + thread + ",\"n\":" + n + ",\"padding\":\""
+                + padding(n) + "\"}";
+    }
+
+    /**
+     * bodies of different lengths, so a reused buffer shows up as a
+     * changed or cut body
+     */
+    private static String padding(int n) {
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < n % 17; i++)
+            padding.append((char) ('a' + i));
+        return padding.toString();
+    }
+
+    /**
+     * reads the body the way play sends it, as a stream in direct mode or
+     * from the output buffer with elasticsearch.rest.response=buffered
+     */
+    private static String body(Response response) throws Exception {
+        if (response.direct != null)
+            return IO.readContentAsString((InputStream) response.direct);
+        return response.out.toString("UTF-8");
+    }
+
+}